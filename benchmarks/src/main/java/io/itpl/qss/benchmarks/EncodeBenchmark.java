@@ -0,0 +1,51 @@
+package io.itpl.qss.benchmarks;
+
+import com.google.zxing.WriterException;
+import io.itpl.qss.encoder.ModuleMatrix;
+import io.itpl.qss.encoder.QREncoder;
+import io.itpl.qss.exception.QREncoderException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * QREncoder.encodeQRData(): the data to module matrix stage, independent of the pixel size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncodeBenchmark {
+    @Param({"url", "long-url", "wifi", "vcard", "vcard-full", "text-large"})
+    public String payload;
+    @Param({"0", "2"})
+    public int errorLevel;
+
+    private String data;
+    private int version;
+
+    @Setup
+    public void setup() throws QREncoderException, WriterException {
+        data = Payloads.get(payload);
+        version = Payloads.version(data, errorLevel);
+    }
+
+    @Benchmark
+    public ModuleMatrix encode() {
+        QREncoder encoder = new QREncoder(version, QREncoder.getModuleCount(version), errorLevel);
+        encoder.encodeQRData(data);
+        return encoder.getModuleMatrix();
+    }
+}
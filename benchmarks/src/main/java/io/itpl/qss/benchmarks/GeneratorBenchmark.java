@@ -0,0 +1,51 @@
+package io.itpl.qss.benchmarks;
+
+import io.itpl.qss.client.QRConfig;
+import io.itpl.qss.client.QRGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * QRGenerator.getBinaryImage() end to end: encoding, rendering, logo and image encoding, as a request to the
+ * library's users. The logo is read from a local file, through the logo cache when it is enabled.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeneratorBenchmark {
+    @Param({"url", "wifi", "vcard", "text-large"})
+    public String payload;
+    @Param({"10", "40", "100"})
+    public int size;
+    @Param({"false", "true"})
+    public boolean logo;
+    @Param({"png", "jpg"})
+    public String format;
+
+    private QRConfig config;
+
+    @Setup
+    public void setup() throws Exception {
+        String data = Payloads.get(payload);
+        config = logo ? QRConfig.from(data, size, Logos.createFile(256)) : QRConfig.from(data, size);
+    }
+
+    @Benchmark
+    public byte[] getBinaryImage() throws Exception {
+        return new QRGenerator(config).getBinaryImage(format);
+    }
+}
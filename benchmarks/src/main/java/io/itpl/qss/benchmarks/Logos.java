@@ -0,0 +1,42 @@
+package io.itpl.qss.benchmarks;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Synthetic logos, so the benchmarks do not depend on a network or on files of the working directory.
+ */
+final class Logos {
+    private Logos() {
+    }
+
+    /**
+     * @return a square logo with a gradient and a few antialiased shapes, colorful as a real one.
+     */
+    static BufferedImage create(int size) {
+        BufferedImage logo = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = logo.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setPaint(new GradientPaint(0, 0, new Color(0, 90, 200), size, size, new Color(240, 120, 0)));
+        g.fillRoundRect(0, 0, size, size, size / 4, size / 4);
+        g.setColor(Color.WHITE);
+        g.fillOval(size / 4, size / 4, size / 2, size / 2);
+        g.setColor(new Color(200, 20, 60, 180));
+        g.fillRect(size / 3, size / 3, size / 3, size / 3);
+        g.dispose();
+        return logo;
+    }
+
+    /**
+     * @return "file:" URL of the logo written as a temporary PNG, deleted on exit.
+     */
+    static String createFile(int size) throws IOException {
+        File file = File.createTempFile("qss-logo-", ".png");
+        file.deleteOnExit();
+        ImageIO.write(create(size), "png", file);
+        return file.toURI().toString();
+    }
+}
@@ -0,0 +1,59 @@
+package io.itpl.qss.benchmarks;
+
+import io.itpl.qss.client.QRConfig;
+import io.itpl.qss.exception.ImageSizeException;
+import io.itpl.qss.render.QRCode;
+import io.itpl.qss.render.StyleConfig;
+import io.itpl.qss.utils.QRUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * QRUtils.getOverlayImage(): resizing a decoded logo and drawing it with its background over a rendered QR image.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OverlayBenchmark {
+    @Param({"10", "40", "100"})
+    public int size;
+    /**
+     * Side of the source logo in pixels, from an icon to a photo sized upload.
+     */
+    @Param({"128", "1024"})
+    public int logoSize;
+
+    private BufferedImage qrImage;
+    private BufferedImage logo;
+    private StyleConfig style;
+
+    @Setup
+    public void setup() throws Exception {
+        QRConfig config = QRConfig.from(Payloads.URL, size);
+        style = StyleConfig.getDefaultStyleConfig();
+        qrImage = new QRCode(config.getAlphanumericData(), config.getQRVersion(), config.getQRSize(),
+                config.getErrorCorrectionLevel(), style).toImage();
+        logo = Logos.create(logoSize);
+    }
+
+    @Benchmark
+    public BufferedImage overlay() throws IOException, ImageSizeException {
+        return QRUtils.getOverlayImage(qrImage, logo, style);
+    }
+}
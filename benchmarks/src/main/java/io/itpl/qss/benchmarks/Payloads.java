@@ -0,0 +1,89 @@
+package io.itpl.qss.benchmarks;
+
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.WriterException;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import com.google.zxing.qrcode.encoder.Encoder;
+import io.itpl.qss.exception.QREncoderException;
+import io.itpl.qss.helper.DataHelper;
+
+import java.util.EnumMap;
+import java.util.Hashtable;
+import java.util.Map;
+
+/**
+ * Payload corpus of the benchmarks, the kinds of data the library is used for in production.
+ * From short to long they span the small (2..4), medium (6..11) and large (18..30) QR versions.
+ */
+final class Payloads {
+    static final String URL = "https://www.iwantunlimited.com";
+    static final String LONG_URL = "https://shop.example.org/catalog/products/98765?utm_source=qr&utm_medium=print"
+            + "&utm_campaign=autumn-sale&ref=store-0042&lang=en";
+    static final String WIFI = DataHelper.getWifiConnectionString("Office-Guest", "s3cr3t-pass!", "WPA");
+
+    private Payloads() {
+    }
+
+    /**
+     * @param name one of "url", "long-url", "wifi", "vcard", "vcard-full" or "text-large".
+     * "vcard-full" needs more modules than QRConfig reserves for its length (see version()), it is only used
+     * by the benchmarks which choose the version themselves.
+     * @return the payload of the given name.
+     */
+    static String get(String name) throws QREncoderException {
+        switch (name) {
+            case "url":
+                return URL;
+            case "long-url":
+                return LONG_URL;
+            case "wifi":
+                return WIFI;
+            case "vcard":
+                return vCard(false);
+            case "vcard-full":
+                return vCard(true);
+            case "text-large":
+                return textLarge();
+            default:
+                throw new IllegalArgumentException("Unknown payload:" + name);
+        }
+    }
+
+    /**
+     * QREncoder.getCompatibleVersion() sizes the version for alphanumeric data, byte mode payloads (i.e. vCards)
+     * may need a larger one.
+     * @param errorLevel 0 (L) or 2 (Q), as QREncoder.
+     * @return the smallest version holding the data.
+     */
+    static int version(String data, int errorLevel) throws WriterException {
+        Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
+        hints.put(EncodeHintType.CHARACTER_SET, "UTF-8");
+        ErrorCorrectionLevel level = errorLevel == 2 ? ErrorCorrectionLevel.Q : ErrorCorrectionLevel.L;
+        return Encoder.encode(data, level, hints).getVersion().getVersionNumber();
+    }
+
+    private static String vCard(boolean full) throws QREncoderException {
+        Hashtable<String, String> contact = new Hashtable<>();
+        contact.put("Name", "Patel;Timir");
+        contact.put("LName", "Timir Patel");
+        contact.put("Work-Phone", "+91-79-1234-5678");
+        if (full) {
+            contact.put("Email", "timir.patel@iwantunlimited.com");
+            contact.put("Company", "iWant Technologies Pvt. Ltd.;Engineering;Mobile Platforms");
+            contact.put("Designation", "Senior Software Engineer");
+            contact.put("Home-Phone", "+91-98-7654-3210");
+        }
+        return DataHelper.createVCardFrom(contact);
+    }
+
+    /**
+     * @return about 1000 characters of upper case text, encoded in the alphanumeric mode.
+     */
+    private static String textLarge() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; text.length() < 1000; i++) {
+            text.append("HTTPS://TRACK.EXAMPLE.ORG/SHIPMENT/").append(100000 + i * 7919).append(' ');
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,68 @@
+package io.itpl.qss.benchmarks;
+
+import io.itpl.qss.encoder.QREncoder;
+import io.itpl.qss.exception.InvalidQRConfigException;
+import io.itpl.qss.render.QRCode;
+import io.itpl.qss.render.StyleConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * QRCode.toImage(): the module matrix to raster stage, for every data and Finder shape.
+ * The shape caches are warm after the first iteration, as in a server rendering one style over and over.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RenderBenchmark {
+    @Param({"url", "vcard-full"})
+    public String payload;
+    /**
+     * Module pitch of QRConfig.SIZE_SMALL, SIZE_MEDIUM and SIZE_LARGE.
+     */
+    @Param({"10", "40", "100"})
+    public int size;
+    /**
+     * StyleConfig.DATA_SHAPE_*.
+     */
+    @Param({"0", "1", "2", "3", "4", "5"})
+    public int dataShape;
+    /**
+     * StyleConfig.FINDER_*.
+     */
+    @Param({"0", "1", "2", "3", "4"})
+    public int finderShape;
+
+    private QRCode qrCode;
+
+    @Setup
+    public void setup() throws Exception {
+        String data = Payloads.get(payload);
+        int version = Payloads.version(data, 0);
+        StyleConfig style = StyleConfig.getDefaultStyleConfig();
+        style.dataBlockShape = dataShape;
+        style.topLeftFinderShape = finderShape;
+        style.topRightFinderShape = finderShape;
+        style.bottomLeftFinderShape = finderShape;
+        qrCode = new QRCode(data, version, QREncoder.getModuleCount(version) * size, 0, style);
+    }
+
+    @Benchmark
+    public Object toImage() throws InvalidQRConfigException {
+        return qrCode.toImage();
+    }
+}
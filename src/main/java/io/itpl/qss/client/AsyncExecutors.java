@@ -0,0 +1,41 @@
+package io.itpl.qss.client;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors for the asynchronous QRGenerator API (getBinaryImageAsync(), getBase64EncodedImageAsync()).
+ * The library is shipped as a multi-release jar: on Java 21+ the class from META-INF/versions/21 is loaded,
+ * which runs every task on its own virtual thread. This class is the Java 8 fallback.
+ */
+public final class AsyncExecutors {
+    private static final AtomicInteger threadCount = new AtomicInteger();
+
+    private AsyncExecutors() {
+    }
+
+    /**
+     * @return true if newBlockingTaskExecutor() runs the tasks on virtual threads on this runtime.
+     */
+    public static boolean isVirtualThreadSupported() {
+        return false;
+    }
+
+    /**
+     * Executor for renders which block on I/O (i.e. the logo URL fetch).
+     * On Java 21+ each task runs on a new virtual thread. On older runtimes (this class) the tasks run on an
+     * unbounded cached pool of daemon threads: it grows with the blocked tasks just as well, but with a platform
+     * thread per concurrent task, so the callers must bound the number of renders they submit at once.
+     * @return new executor, to be shut down by the caller.
+     */
+    public static ExecutorService newBlockingTaskExecutor() {
+        ThreadFactory factory = r -> {
+            Thread thread = new Thread(r, "qss-async-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return Executors.newCachedThreadPool(factory);
+    }
+}
@@ -0,0 +1,65 @@
+package io.itpl.qss.client;
+
+/**
+ * Outcome of one QRConfig of a batch (see QRGenerator.generateBatch()) or of one rendition
+ * (see QRGenerator.generateRenditions()).
+ * Either the encoded image or the error is set, a failing item does not fail the rest of the batch.
+ */
+public class BatchResult {
+    private final int index;
+    private final QRConfig qrConfig;
+    private final byte[] image;
+    private final Exception error;
+
+    private BatchResult(int index, QRConfig qrConfig, byte[] image, Exception error) {
+        this.index = index;
+        this.qrConfig = qrConfig;
+        this.image = image;
+        this.error = error;
+    }
+
+    static BatchResult success(int index, QRConfig qrConfig, byte[] image) {
+        return new BatchResult(index, qrConfig, image, null);
+    }
+
+    static BatchResult failure(int index, QRConfig qrConfig, Exception error) {
+        return new BatchResult(index, qrConfig, null, error);
+    }
+
+    /**
+     * @return position of the config in the batch.
+     */
+    public int getIndex() {
+        return this.index;
+    }
+
+    public QRConfig getQrConfig() {
+        return this.qrConfig;
+    }
+
+    /**
+     * @return true if the image was generated.
+     */
+    public boolean isSuccess() {
+        return this.error == null;
+    }
+
+    /**
+     * @return encoded image, null in case of failure.
+     */
+    public byte[] getImage() {
+        return this.image;
+    }
+
+    /**
+     * @return the reason of the failure (i.e. QREncoderException, InvalidQRConfigException), null on success.
+     */
+    public Exception getError() {
+        return this.error;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchResult{index=" + index + (error == null ? ", bytes=" + image.length : ", error=" + error) + "}";
+    }
+}
@@ -0,0 +1,352 @@
+package io.itpl.qss.client;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent cache of the encoded images of QRGenerator (see QRGenerator.setMappedRenderCache()), so a restarted
+ * node serves the popular codes right away instead of rendering them again.
+ * <ul>
+ * <li>The images are appended to a segment file which is memory mapped once, the hits are read-only slices of the
+ * mapping and are written out without a copy on the heap.
+ * <li>The keys are the ones of RenderCache.keyOf(). The index of the keys is rebuilt on open by walking the record
+ * headers, without reading the images; the checksum of an image is verified the first time it is served.
+ * <li>The header holds the length of the committed records, a record is committed after it is written. A record
+ * torn by a crash is therefore ignored, or fails its checksum and is dropped.
+ * <li>Once the segment is full a new generation is started: the images are dropped and the segment is written
+ * again from its start. This waits until no slice is pinned (see pin()), the put() which finds the segment full
+ * starts it if it can, otherwise the release of the last pin does and the puts meanwhile are refused.
+ * <li>clear() rewrites the segment in place, it waits for the slices being read (see pin()).
+ * </ul>
+ * The cache is thread safe.
+ */
+public class MappedRenderCache implements Closeable {
+    private static final long MAGIC = 0x5153535243414348L; // "QSSRCACH"
+    private static final int FORMAT_VERSION = 1;
+    /**
+     * Magic, format version, reserved int and the committed length.
+     */
+    private static final int HEADER_SIZE = 24;
+    private static final int COMMITTED_OFFSET = 16;
+    private static final int KEY_SIZE = 32;
+    /**
+     * SHA-256 key, image length and CRC32 of the image.
+     */
+    private static final int RECORD_HEADER_SIZE = KEY_SIZE + 8;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final HashMap<String, Entry> index = new HashMap<>();
+    /**
+     * Read side held by the readers of the slices, write side by clear().
+     */
+    private final ReadWriteLock pins = new ReentrantReadWriteLock();
+    private int committed;
+    /**
+     * Set once a put() did not fit, until the next generation is started.
+     */
+    private volatile boolean full;
+    private int generations;
+    private long hits;
+    private long misses;
+
+    /**
+     * Open (or create) the segment file and rebuild the index of its images.
+     * A file of another format or capacity is started over.
+     * @param file segment file.
+     * @param capacity size of the segment file in bytes, at most 2GB.
+     * @throws IOException in case the file can not be opened or mapped.
+     */
+    public MappedRenderCache(File file, int capacity) throws IOException {
+        if (capacity < HEADER_SIZE) {
+            throw new IllegalArgumentException("Capacity is too small:" + capacity);
+        }
+        this.file = new RandomAccessFile(file, "rw");
+        try {
+            boolean existing = this.file.length() == capacity;
+            this.file.setLength(capacity);
+            this.buffer = this.file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            if (!existing || !load()) {
+                reset();
+            }
+        } catch (IOException | RuntimeException e) {
+            this.file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @param key key of the image, see RenderCache.keyOf().
+     * @return read-only slice of the mapped image, null if not cached. The slice is valid until clear(), it must
+     * be read while the cache is pinned (see pin()) if clear() may be called meanwhile.
+     */
+    public synchronized ByteBuffer get(String key) {
+        Entry entry = index.get(key);
+        if (entry != null && !entry.verified) {
+            CRC32 crc = new CRC32();
+            crc.update(slice(entry));
+            if ((int) crc.getValue() == entry.crc) {
+                entry.verified = true;
+            } else {
+                index.remove(key);
+                entry = null;
+            }
+        }
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return slice(entry).asReadOnlyBuffer();
+    }
+
+    /**
+     * Append an image to the segment and commit it. A full segment is started over first (see the class comment).
+     * @param key key of the image, see RenderCache.keyOf().
+     * @param image encoded image.
+     * @return false if the image is larger than the segment, or if the segment is full and slices are pinned.
+     */
+    public synchronized boolean put(String key, byte[] image) {
+        if (index.containsKey(key)) {
+            return true;
+        }
+        long length = RECORD_HEADER_SIZE + (long) image.length;
+        if (HEADER_SIZE + length > buffer.capacity()) {
+            return false;
+        }
+        if (committed + length > buffer.capacity()) {
+            full = true;
+            if (!startGeneration()) {
+                return false;
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(image, 0, image.length);
+        ByteBuffer record = duplicate();
+        ((Buffer) record).position(committed);
+        record.put(toBytes(key));
+        record.putInt(image.length);
+        record.putInt((int) crc.getValue());
+        record.put(image);
+        Entry entry = new Entry(committed, image.length, (int) crc.getValue());
+        // Written before it is committed, an interrupted append is ignored on the next open.
+        entry.verified = true;
+        index.put(key, entry);
+        committed = record.position();
+        buffer.putLong(COMMITTED_OFFSET, committed);
+        return true;
+    }
+
+    /**
+     * Pin the slices: clear() waits until every pin is released, so the slices returned by get() between pin() and
+     * unpin() are not overwritten while they are read (i.e. written to a socket). The pins are reentrant and do
+     * not block each other, get() or put().
+     */
+    public void pin() {
+        pins.readLock().lock();
+    }
+
+    /**
+     * Release a pin() of the calling thread. The last one starts the new generation of a full segment.
+     */
+    public void unpin() {
+        pins.readLock().unlock();
+        if (full) {
+            synchronized (this) {
+                if (full) {
+                    startGeneration();
+                }
+            }
+        }
+    }
+
+    /**
+     * Drop all the images, once the slices being read are released (see pin()). The slices handed out before
+     * must no longer be used.
+     */
+    public void clear() {
+        pins.writeLock().lock();
+        try {
+            synchronized (this) {
+                reset();
+            }
+        } finally {
+            pins.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Write the committed images to the disk, they otherwise survive a restart of the process but not of the OS.
+     */
+    public synchronized void force() {
+        buffer.force();
+    }
+
+    /**
+     * Close the file. The mapping is released by the garbage collector, the slices handed out stay readable.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        file.close();
+    }
+
+    /**
+     * @return number of images in the segment.
+     */
+    public synchronized int getCount() {
+        return index.size();
+    }
+
+    /**
+     * @return bytes of the segment in use, header and records.
+     */
+    public synchronized int getSize() {
+        return committed;
+    }
+
+    /**
+     * @return size of the segment file.
+     */
+    public int getCapacity() {
+        return buffer.capacity();
+    }
+
+    /**
+     * @return number of times the segment was full and started over since it was opened.
+     */
+    public synchronized int getGenerationCount() {
+        return generations;
+    }
+
+    /**
+     * @return number of get() calls which found the image.
+     */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * @return number of get() calls which did not find the image (or found it corrupted).
+     */
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * Rebuild the index from the record headers.
+     * @return false if the file is not a segment of this format.
+     */
+    private boolean load() {
+        if (buffer.getLong(0) != MAGIC || buffer.getInt(8) != FORMAT_VERSION) {
+            return false;
+        }
+        long length = buffer.getLong(COMMITTED_OFFSET);
+        if (length < HEADER_SIZE || length > buffer.capacity()) {
+            return false;
+        }
+        int position = HEADER_SIZE;
+        byte[] key = new byte[KEY_SIZE];
+        while (position + RECORD_HEADER_SIZE <= length) {
+            ByteBuffer record = duplicate();
+            ((Buffer) record).position(position);
+            record.get(key);
+            int imageLength = record.getInt();
+            int crc = record.getInt();
+            if (imageLength < 0 || record.position() + (long) imageLength > length) {
+                break;
+            }
+            index.put(toHex(key), new Entry(position, imageLength, crc));
+            position = record.position() + imageLength;
+        }
+        // A record cut short is dropped with everything after it.
+        committed = position;
+        buffer.putLong(COMMITTED_OFFSET, committed);
+        return true;
+    }
+
+    /**
+     * Start over a full segment, unless slices are pinned (the ones of the calling thread included).
+     * Only tries the write side of the pins: clear() holds it before the monitor, put() and unpin() after.
+     * @return true if the segment was started over.
+     */
+    private boolean startGeneration() {
+        if (!pins.writeLock().tryLock()) {
+            return false;
+        }
+        try {
+            reset();
+            generations++;
+            return true;
+        } finally {
+            pins.writeLock().unlock();
+        }
+    }
+
+    private void reset() {
+        full = false;
+        index.clear();
+        buffer.putLong(0, MAGIC);
+        buffer.putInt(8, FORMAT_VERSION);
+        buffer.putInt(12, 0);
+        committed = HEADER_SIZE;
+        buffer.putLong(COMMITTED_OFFSET, committed);
+    }
+
+    private ByteBuffer slice(Entry entry) {
+        ByteBuffer image = duplicate();
+        ((Buffer) image).position(entry.offset + RECORD_HEADER_SIZE);
+        ((Buffer) image).limit(entry.offset + RECORD_HEADER_SIZE + entry.length);
+        return image.slice();
+    }
+
+    /**
+     * Duplicate the mapping through ByteBuffer, MappedByteBuffer.duplicate() only exists from Java 17 and
+     * ByteBuffer.position(int)/limit(int) from Java 9 (hence the Buffer casts), the jar must run on Java 8.
+     */
+    private ByteBuffer duplicate() {
+        ByteBuffer mapped = buffer;
+        return mapped.duplicate();
+    }
+
+    private static byte[] toBytes(String key) {
+        if (key.length() != 2 * KEY_SIZE) {
+            throw new IllegalArgumentException("Not a RenderCache key:" + key);
+        }
+        byte[] bytes = new byte[KEY_SIZE];
+        for (int i = 0; i < KEY_SIZE; i++) {
+            bytes[i] = (byte) Integer.parseInt(key.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+
+    private static String toHex(byte[] key) {
+        StringBuilder hex = new StringBuilder(2 * key.length);
+        for (byte b : key) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    private static final class Entry {
+        final int offset;
+        final int length;
+        final int crc;
+        boolean verified;
+
+        Entry(int offset, int length, int crc) {
+            this.offset = offset;
+            this.length = length;
+            this.crc = crc;
+        }
+    }
+}
@@ -5,6 +5,7 @@ import io.itpl.qss.encoder.QREncoder;
 import io.itpl.qss.exception.InvalidQRConfigException;
 import io.itpl.qss.exception.QREncoderException;
 import io.itpl.qss.render.StyleConfig;
+import io.itpl.qss.render.StyleSnapshot;
 
 import java.net.MalformedURLException;
 
@@ -14,6 +15,10 @@ public class QRConfig {
     private int _size;
     private int qrImageSize;
     private StyleConfig qrStyle;
+    /**
+     * Set by setStyle() (and withSize()) instead of qrStyle.
+     */
+    private StyleSnapshot frozenStyle;
     private int dataType;
     private String textData;
     private long numericData;
@@ -81,6 +86,29 @@ public class QRConfig {
     }
     
     
+    /**
+     * @param qrSize pixels per module of the copy, as from(data, qrSize).
+     * @return a copy of this config (data, logo, error correction and style) at another size, the margin
+     * follows the size. The style is shared frozen (see getStyle()).
+     * @throws InvalidQRConfigException in case the size is invalid.
+     */
+    public QRConfig withSize(int qrSize) throws InvalidQRConfigException {
+        QRConfig config = new QRConfig();
+        config._version = this._version;
+        config.dataType = this.dataType;
+        config.textData = this.textData;
+        config.numericData = this.numericData;
+        config.binaryData = this.binaryData;
+        config.hasLogo = this.hasLogo;
+        config.logoURL = this.logoURL;
+        config.errorCorrectionLevel = this.errorCorrectionLevel;
+        config.setSize(qrSize);
+        config.margin = Math.round(config._size*0.1f);
+        config.qrImageSize = config._size + config.margin;
+        config.frozenStyle = getStyle();
+        return config;
+    }
+
     private void setSize(int inputSize)throws InvalidQRConfigException{
     	int base = ((this._version-1)*4 )+ 21;
     	int prev_Size = this._size;
@@ -94,6 +122,15 @@ public class QRConfig {
     
     public void setStyleConfig(StyleConfig style){
         this.qrStyle = style;
+        this.frozenStyle = null;
+    }
+    /**
+     * @param style frozen style (see StyleConfig.freeze()) to set the visual appearance of barcode, shared as is
+     * by the generators.
+     */
+    public void setStyle(StyleSnapshot style){
+        this.frozenStyle = style;
+        this.qrStyle = null;
     }
     /**
      * @param text The actual data of which need to be encoded into QR Code.
@@ -153,9 +190,26 @@ public class QRConfig {
     public int getMargin(){
         return this.margin;
     }
+    /**
+     * @return the style of the barcode, changes are applied to the images generated afterwards. null if the style
+     * was set frozen (see setStyle()), toStyleConfig() gives a copy to edit and set back then.
+     */
     public StyleConfig getStyleConfig(){
         return this.qrStyle;
     }
+    /**
+     * @return new mutable copy of the style of the barcode as of now, whether it was set frozen or not. Changes
+     * are applied once it is set with setStyleConfig().
+     */
+    public StyleConfig toStyleConfig(){
+        return getStyle().toStyleConfig();
+    }
+    /**
+     * @return the style of the barcode as of now, frozen (see StyleConfig.freeze()).
+     */
+    public StyleSnapshot getStyle(){
+        return this.frozenStyle != null ? this.frozenStyle : this.qrStyle.freeze();
+    }
     public String getLogoImageURL(){
         return this.logoURL;
     }
@@ -2,20 +2,52 @@ package io.itpl.qss.client;
 
 
 
+import io.itpl.qss.encoder.EncodedSymbol;
 import io.itpl.qss.exception.ImageSizeException;
 import io.itpl.qss.exception.InvalidQRConfigException;
 import io.itpl.qss.exception.QREncoderException;
+import io.itpl.qss.render.FinderElement;
 import io.itpl.qss.render.QRCode;
-import io.itpl.qss.render.StyleConfig;
+import io.itpl.qss.render.StyleSnapshot;
+import io.itpl.qss.render.SvgRenderer;
+import io.itpl.qss.utils.AppendableOutputStream;
+import io.itpl.qss.utils.ByteBufferOutputStream;
+import io.itpl.qss.utils.PngWriter;
 import io.itpl.qss.utils.QRUtils;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
 import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.Collection;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RejectedExecutionException;
 
 import static java.util.Base64.getEncoder;
 
@@ -27,24 +59,187 @@ public class QRGenerator {
     private QRConfig qrConfig;
     private QRCode myQrCode;
     private final static String ALIAS = "QRGenerator";
+    /**
+     * PNG output goes through this writer (indexed PNG for the few colors of a QR Code) instead of ImageIO.
+     */
+    private static volatile PngWriter pngWriter = new PngWriter();
+    /**
+     * Encoded images of the previous requests, null if disabled (default).
+     */
+    private static volatile RenderCache renderCache;
+    /**
+     * Encoded images persisted across restarts, null if disabled (default).
+     */
+    private static volatile MappedRenderCache mappedRenderCache;
+    /**
+     * Default strip size of writePngStripsTo(), 2MB for an indexed canvas and 16MB with a logo.
+     */
+    private static final int STRIP_PIXELS = 4 * 1024 * 1024;
+    /**
+     * Smaller images are always rendered on the calling thread, forking costs more than it saves.
+     */
+    private static final int MIN_PARALLEL_PIXELS = 1024 * 1024;
+    /**
+     * Smallest row tile of a parallel render.
+     */
+    private static final int MIN_TILE_HEIGHT = 64;
+    private ForkJoinPool renderPool;
+    /**
+     * Fitted logo shared by the renditions of generateRenditions(), fetched by generateQRImage() if null.
+     */
+    private BufferedImage fittedLogo;
     public QRGenerator(QRConfig initialQRConfig) throws QREncoderException, InvalidQRConfigException {
+        this(initialQRConfig, null);
+    }
+
+    /**
+     * Generate the images of the config from an already encoded symbol, i.e. to render the same data in several
+     * styles, sizes or formats while encoding it once (see encode()).
+     * @param initialQRConfig config of the images.
+     * @param symbol the encoded data of the config, null to encode it.
+     * @throws QREncoderException in case QR Data encoding is failed, QRConfig is null or invalid, or the symbol
+     * does not hold the data, version and error level of the config.
+     * @throws InvalidQRConfigException in case QR config is invalid.
+     */
+    public QRGenerator(QRConfig initialQRConfig, EncodedSymbol symbol) throws QREncoderException, InvalidQRConfigException {
     	if(initialQRConfig != null && initialQRConfig.validate()) {
     		this.qrConfig = initialQRConfig;
     		String data = qrConfig.getAlphanumericData();
     		int version = qrConfig.getQRVersion();
     		int size = qrConfig.getQRSize();
     		int error = qrConfig.getErrorCorrectionLevel();
-    		StyleConfig style = qrConfig.getStyleConfig();
+    		StyleSnapshot style = qrConfig.getStyle();
     		
     		log("Version:"+version+", size:"+size+",Error Level:"+error);
 	        // Step 1: Initialize the QR Code Object
-	        myQrCode = new QRCode(data, version, size,error,style);
+	        if (symbol == null) {
+	            myQrCode = new QRCode(data, version, size,error,style);
+	        } else if (symbol.matches(data, version, error)) {
+	            myQrCode = new QRCode(symbol, size, style);
+	        } else {
+	            throw new QREncoderException("Encoded symbol does not match the QRConfig:" + symbol);
+	        }
 	        
 	        infoLog("QRCode Object Created with:"+myQrCode);
     	}else
     		throw new QREncoderException("QRConfig is null or invalid");
     }
     
+    /**
+     * Encode the data of a config once, for any number of QRGenerator(qrConfig, symbol) of the same data with
+     * other styles, sizes, margins or formats.
+     * @param qrConfig config of the data, it is validated.
+     * @return the encoded symbol.
+     * @throws QREncoderException in case QR Data encoding is failed or QRConfig is null or invalid.
+     */
+    public static EncodedSymbol encode(QRConfig qrConfig) throws QREncoderException {
+        if (qrConfig == null || !qrConfig.validate()) {
+            throw new QREncoderException("QRConfig is null or invalid");
+        }
+        return EncodedSymbol.encode(qrConfig.getAlphanumericData(), qrConfig.getQRVersion(),
+                qrConfig.getErrorCorrectionLevel());
+    }
+
+    /**
+     * @return the encoded symbol of this generator.
+     */
+    public EncodedSymbol getSymbol() {
+        return myQrCode.getSymbol();
+    }
+
+    /**
+     * Replace the writer used for the "png" format, i.e. to change the compression level.
+     * @param writer new writer, or null to write PNG through ImageIO.
+     */
+    public static void setPngWriter(PngWriter writer) {
+        pngWriter = writer;
+    }
+
+    /**
+     * @return the writer used for the "png" format, null if PNG is written through ImageIO.
+     */
+    public static PngWriter getPngWriter() {
+        return pngWriter;
+    }
+
+    /**
+     * Serve the images of getBinaryImage(), writeTo() and the Base64 methods from the given cache, i.e. for traffic
+     * which requests the same codes over and over. A hit writes the stored bytes without rendering.
+     * See setMappedRenderCache() to keep them across restarts.
+     * The SVG and the strips of writePngStripsTo() are not cached.
+     * @param cache the cache, or null to render every image (default).
+     */
+    public static void setRenderCache(RenderCache cache) {
+        renderCache = cache;
+    }
+
+    /**
+     * @return the cache of the encoded images, null if disabled.
+     */
+    public static RenderCache getRenderCache() {
+        return renderCache;
+    }
+
+    /**
+     * Serve the images from the given persistent cache as well, behind the RenderCache if one is set. Its hits are
+     * written straight from the mapped file, the rendered images are added to both caches.
+     * @param cache the cache, or null to disable it (default).
+     */
+    public static void setMappedRenderCache(MappedRenderCache cache) {
+        mappedRenderCache = cache;
+    }
+
+    /**
+     * @return the persistent cache of the encoded images, null if disabled.
+     */
+    public static MappedRenderCache getMappedRenderCache() {
+        return mappedRenderCache;
+    }
+
+    /**
+     * Same as new QRGenerator(qrConfig).getBinaryImage(imageFormat), but a hit of the render caches skips the
+     * encoding of the data as well.
+     * @param qrConfig config of the image.
+     * @param imageFormat output format, i.e. "png".
+     * @return the encoded image.
+     * @throws IOException in case of failure of generating output image stream.
+     * @throws InvalidQRConfigException in case QR config is invalid.
+     * @throws QREncoderException in case QR Data encoding is failed or QRConfig is null or invalid.
+     * @throws ImageSizeException in case Given Imagesize is invalid or not allowed.
+     */
+    public static byte[] getBinaryImage(QRConfig qrConfig, String imageFormat) throws IOException, QREncoderException, ImageSizeException, InvalidQRConfigException {
+        if (isCaching() && qrConfig != null && qrConfig.validate()) {
+            MappedRenderCache mapped = pin();
+            try {
+                ByteBuffer image = getCached(RenderCache.keyOf(qrConfig, imageFormat), mapped);
+                if (image != null) {
+                    return toArray(image);
+                }
+            } finally {
+                unpin(mapped);
+            }
+        }
+        return new QRGenerator(qrConfig).getBinaryImage(imageFormat);
+    }
+
+    /**
+     * Render the large images of this generator in parallel: the canvas is split into row tiles which are
+     * painted on the given pool, each through a graphics clipped to its rows. The modules crossing a tile border
+     * are drawn by both tiles and clipped, so the image is bit-identical to the serial render.
+     * Images under 1M pixels are still rendered on the calling thread.
+     * @param pool pool running the tiles, i.e. ForkJoinPool.commonPool(), or null to render serially (default).
+     */
+    public void setRenderPool(ForkJoinPool pool) {
+        this.renderPool = pool;
+    }
+
+    /**
+     * @return the pool running the tiles of the large images, null if they are rendered serially.
+     */
+    public ForkJoinPool getRenderPool() {
+        return this.renderPool;
+    }
+
 /**
  * 
  * @param newQRConfig  QRConfig object to replace with.
@@ -75,67 +270,829 @@ public class QRGenerator {
     private BufferedImage generateQRImage() throws IOException,InvalidQRConfigException,QREncoderException, ImageSizeException {
         
     	Date t1 = new Date();
-        // Let us get the image of QR Code.
-        BufferedImage imageWithQR = myQrCode.toImage();
-        long r1 = new Date().getTime()-t1.getTime();
-        //System.out.println("Core Encoding Resp Time:"+r1+"ms");
-        Date t2 = new Date();
-        // Let us create Empty Canvas to put the QR Image in Center with Margin.
         // Calculate the Canvis size, it will be QRImage + margin;
         int margin = qrConfig.getMargin();
         infoLog("Margin ratio be added in QR Image:"+margin);
+        int qrSize = qrConfig.getQRSize();
         // Add margin to the output image size.
-        int resultImageSize = imageWithQR.getWidth() + margin;
+        int resultImageSize = qrSize + margin;
         infoLog("The output Image size will be:"+resultImageSize);
         // Calculate (x,y) location for placement of the actual QR image on canvas.
-        int qrXY = (resultImageSize - imageWithQR.getWidth())/2;
-        // Create blank canvas for output image.
-        BufferedImage qrCodeOutputImage = new BufferedImage(resultImageSize, resultImageSize, BufferedImage.TYPE_INT_RGB);
-        
-        //Now ready to draw the data.
-        Graphics2D g = QRCode.of(qrCodeOutputImage);
+        int qrXY = (resultImageSize - qrSize)/2;
+        StyleSnapshot style = myQrCode.getStyle();
+        // Fetch the logo first, a failure must not cost a rendering.
+        BufferedImage logo = null;
+        if(this.qrConfig.isLogoRequired()){
+        	logo = this.fittedLogo != null ? this.fittedLogo
+        	        : QRUtils.getFittedLogo(qrConfig.getLogoImageURL(), resultImageSize);
+        }
+        // The only canvas of the image: background, QR Code and logo are all drawn into it.
+        // Indexed as long as the style colors allow, the logo colors need RGB.
+        BufferedImage qrCodeOutputImage = logo == null
+                ? QRUtils.createCanvas(resultImageSize, resultImageSize, style.getPalette())
+                : new BufferedImage(resultImageSize, resultImageSize, BufferedImage.TYPE_INT_RGB);
+        ForkJoinPool pool = this.renderPool;
+        if (pool != null && (long) resultImageSize * resultImageSize >= MIN_PARALLEL_PIXELS) {
+            int tileHeight = Math.max(MIN_TILE_HEIGHT, resultImageSize / (4 * pool.getParallelism()) + 1);
+            List<Integer> borders = new ArrayList<>();
+            for (int top = 0; top < resultImageSize; top = Math.min(resultImageSize, tileBorder(top + tileHeight, qrXY, true))) {
+                borders.add(top);
+            }
+            borders.add(resultImageSize);
+            try {
+                pool.invoke(new TileTask(qrCodeOutputImage, borders, 0, borders.size() - 1, qrXY, logo));
+            } catch (TileException e) {
+                throw e.getCause();
+            }
+        } else {
+            paintRows(qrCodeOutputImage, 0, resultImageSize, qrXY, logo);
+        }
+        long r1 = new Date().getTime()-t1.getTime();
+        //System.out.println("Drawing QR on Canvas:"+r1+"ms");
+        return qrCodeOutputImage;
+    }
+
+    /**
+     * Draw the background, the QR Code and the logo, clipped to the given rows of the canvas.
+     * @param top first row to draw.
+     * @param rows number of rows to draw.
+     * @param qrXY location of the QR Code on the canvas.
+     * @param logo fitted logo, null if none.
+     */
+    private void paintRows(BufferedImage canvas, int top, int rows, int qrXY, BufferedImage logo) throws InvalidQRConfigException {
+        int width = canvas.getWidth();
+        StyleSnapshot style = myQrCode.getStyle();
+        Graphics2D g = QRCode.of(canvas);
+        g.clipRect(0, top, width, rows);
         // Fill the canvas with Background color defined in StyleConfig.
-        g.setColor(qrConfig.getStyleConfig().backgroundColor);
-        
-        g.fillRect(0,0,resultImageSize,resultImageSize);
-        // Place the QRCode image to the calculated qrXY(x,y)
-        g.drawImage(imageWithQR, qrXY, qrXY,null); 
-        // Here the QR Output image is ready without Logo.
+        g.setColor(style.backgroundColor);
+        g.fillRect(0, top, width, rows);
+        // Draw the QRCode at the calculated qrXY(x,y)
+        myQrCode.paint(g, qrXY, qrXY);
+        if (logo != null) {
+            QRUtils.paintOverlay(g, width, canvas.getHeight(), logo, style);
+        }
         g.dispose();
-        // We shall insert the overly image logo based on QR Config.
-        long r2 = new Date().getTime()-t1.getTime();
-        //System.out.println("Putting QR on Canvas:"+r2+"ms");
-        Date t3 = new Date();
-        BufferedImage finalImage = null;
-        if(this.qrConfig.isLogoRequired()){
-            // 
-        	finalImage = QRUtils.getOverlayImageURL(qrCodeOutputImage, qrConfig.getLogoImageURL(), qrConfig.getStyleConfig());
-        }else{
-            // Return QR Code without overly logo image.
-        	finalImage =  qrCodeOutputImage;
+    }
+
+    /**
+     * Java2D rasterises a curve cut by the clip slightly differently than the whole curve, so the tiles (and strips)
+     * of a render must not cut a shape. Inside the QR Code they end on a module border, where all the edges are
+     * straight, and outside of the Finders painted in place (see QRCode.MAX_FINDER_IMAGE_WIDTH).
+     * @param row any row of the canvas.
+     * @param up true for the nearest border at or below the row, false for the nearest one at or above.
+     * @return the nearest row where a tile may end.
+     */
+    private int tileBorder(int row, int qrXY, boolean up) {
+        int modules = myQrCode.getModuleMatrix().getWidth();
+        int pitch = qrConfig.getQRSize() / modules;
+        if (row <= qrXY || row >= qrXY + modules * pitch) {
+            return row;
         }
-        long r3 = new Date().getTime()-t1.getTime();
-        //System.out.println("Putting Logo on QR:"+r3+"ms");
-        return finalImage;
+        int module = up ? (row - qrXY + pitch - 1) / pitch : (row - qrXY) / pitch;
+        // The smaller Finders are blitted, their rows can be cut as well.
+        int finder = FinderElement.FINDER_SIZE * pitch > QRCode.MAX_FINDER_IMAGE_WIDTH ? FinderElement.FINDER_SIZE : 1;
+        if (module > 0 && module < finder) {
+            module = up ? finder : 0;
+        } else if (module > modules - finder && module < modules) {
+            module = up ? modules : modules - finder;
+        }
+        return qrXY + module * pitch;
     }
-    public String getBase64EncodedImage(String imageFormat) throws IOException, QREncoderException, ImageSizeException, InvalidQRConfigException {
-        BufferedImage image = generateQRImage();
 
-        ByteArrayOutputStream binary = new ByteArrayOutputStream();
-        ImageIO.write(image,imageFormat,binary);
-        byte []content = binary.toByteArray();
+    /**
+     * Paints the tiles [first, last) of the canvas, split in halves down to a single tile.
+     * The tiles write disjoint rows of the canvas, the render caches they share are thread safe.
+     */
+    private final class TileTask extends RecursiveAction {
+        private final BufferedImage canvas;
+        private final List<Integer> borders;
+        private final int first;
+        private final int last;
+        private final int qrXY;
+        private final BufferedImage logo;
+
+        /**
+         * @param borders first row of each tile, followed by the height of the canvas.
+         */
+        TileTask(BufferedImage canvas, List<Integer> borders, int first, int last, int qrXY, BufferedImage logo) {
+            this.canvas = canvas;
+            this.borders = borders;
+            this.first = first;
+            this.last = last;
+            this.qrXY = qrXY;
+            this.logo = logo;
+        }
+
+        @Override
+        protected void compute() {
+            if (last - first == 1) {
+                int top = borders.get(first);
+                try {
+                    paintRows(canvas, top, borders.get(last) - top, qrXY, logo);
+                } catch (InvalidQRConfigException e) {
+                    throw new TileException(e);
+                }
+                return;
+            }
+            int middle = (first + last) >>> 1;
+            invokeAll(new TileTask(canvas, borders, first, middle, qrXY, logo),
+                    new TileTask(canvas, borders, middle, last, qrXY, logo));
+        }
+    }
+
+    /**
+     * Carries the checked exception of a tile through ForkJoinPool.invoke().
+     */
+    private static final class TileException extends RuntimeException {
+        TileException(InvalidQRConfigException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized InvalidQRConfigException getCause() {
+            return (InvalidQRConfigException) super.getCause();
+        }
+    }
+
+    public String getBase64EncodedImage(String imageFormat) throws IOException, QREncoderException, ImageSizeException, InvalidQRConfigException {
+        byte []content = getBinaryImage(imageFormat);
         Base64.Encoder encoder = Base64.getEncoder();
         String encoded = getEncoder().encodeToString(content);
         return encoded;
     }
     public byte[] getBinaryImage(String imageFormat) throws IOException, QREncoderException, ImageSizeException, InvalidQRConfigException {
+        if (isCaching()) {
+            MappedRenderCache mapped = pin();
+            try {
+                ByteBuffer cached = getCachedImage(imageFormat, mapped);
+                // The cached image is shared, the caller owns the returned array.
+                return cached != null ? toArray(cached) : new byte[0];
+            } finally {
+                unpin(mapped);
+            }
+        }
         BufferedImage image = generateQRImage();
         ByteArrayOutputStream binary = new ByteArrayOutputStream();
-        ImageIO.write(image,imageFormat,binary);
-        byte []content = binary.toByteArray();
-        return content;
+        writeImage(image, imageFormat, binary);
+        return binary.toByteArray();
+
+    }
+
+    private static boolean isCaching() {
+        return renderCache != null || mappedRenderCache != null;
+    }
+
+    /**
+     * @param mapped the MappedRenderCache, pinned by the caller as long as it reads the image (see pin()).
+     * @return the image from the render caches, rendered and stored on a miss. Shared with the caches and must
+     * not be modified. null if no writer supports the format, or if the caches are disabled.
+     */
+    private ByteBuffer getCachedImage(String imageFormat, MappedRenderCache mapped) throws IOException, QREncoderException, ImageSizeException, InvalidQRConfigException {
+        if (!isCaching()) {
+            return null;
+        }
+        String key = RenderCache.keyOf(qrConfig, myQrCode.getStyle(), imageFormat);
+        ByteBuffer cached = getCached(key, mapped);
+        if (cached != null) {
+            return cached;
+        }
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        if (!writeImage(generateQRImage(), imageFormat, binary)) {
+            return null;
+        }
+        byte[] image = binary.toByteArray();
+        RenderCache cache = renderCache;
+        if (cache != null) {
+            cache.put(key, image);
+        }
+        if (mapped != null) {
+            mapped.put(key, image);
+        }
+        return ByteBuffer.wrap(image);
+    }
+
+    /**
+     * @return the image from the RenderCache, otherwise from the given MappedRenderCache. null if not cached.
+     */
+    private static ByteBuffer getCached(String key, MappedRenderCache mapped) {
+        RenderCache cache = renderCache;
+        if (cache != null) {
+            byte[] image = cache.get(key);
+            if (image != null) {
+                return ByteBuffer.wrap(image);
+            }
+        }
+        return mapped != null ? mapped.get(key) : null;
+    }
+
+    /**
+     * Pin the MappedRenderCache while one of its images is read, so clear() does not overwrite it meanwhile
+     * (see MappedRenderCache.pin()).
+     * @return the pinned cache, to be given to unpin(). null if disabled.
+     */
+    private static MappedRenderCache pin() {
+        MappedRenderCache mapped = mappedRenderCache;
+        if (mapped != null) {
+            mapped.pin();
+        }
+        return mapped;
+    }
+
+    private static void unpin(MappedRenderCache mapped) {
+        if (mapped != null) {
+            mapped.unpin();
+        }
+    }
+
+    private static byte[] toArray(ByteBuffer image) {
+        byte[] copy = new byte[image.remaining()];
+        image.duplicate().get(copy);
+        return copy;
+    }
 
+    /**
+     * Write a cached image, from the array of the RenderCache or in chunks from the mapped file.
+     */
+    private static void write(ByteBuffer image, OutputStream out) throws IOException {
+        ByteBuffer source = image.duplicate();
+        if (source.hasArray()) {
+            out.write(source.array(), source.arrayOffset() + source.position(), source.remaining());
+            return;
+        }
+        byte[] chunk = new byte[Math.min(8192, source.remaining())];
+        while (source.hasRemaining()) {
+            int n = Math.min(chunk.length, source.remaining());
+            source.get(chunk, 0, n);
+            out.write(chunk, 0, n);
+        }
+    }
+
+    /**
+     * Generate the QR Code image and encode it straight into the given stream, without an intermediate byte[].
+     * @param imageFormat output format, i.e. "png".
+     * @param out destination stream, it is not closed.
+     * @return false if no writer supports the format (as ImageIO.write()), nothing is written in that case.
+     * @throws IOException in case of failure of writing to the stream.
+     * @throws InvalidQRConfigException in case QR config is invalid.
+     * @throws QREncoderException in case QR Data encoding is failed.
+     * @throws ImageSizeException in case Given Imagesize is invalid or not allowed.
+     */
+    public boolean writeTo(String imageFormat, OutputStream out) throws IOException, QREncoderException, ImageSizeException, InvalidQRConfigException {
+        if (isCaching()) {
+            MappedRenderCache mapped = pin();
+            try {
+                ByteBuffer cached = getCachedImage(imageFormat, mapped);
+                if (cached == null) {
+                    return false;
+                }
+                write(cached, out);
+                return true;
+            } finally {
+                unpin(mapped);
+            }
+        }
+        BufferedImage image = generateQRImage();
+        return writeImage(image, imageFormat, out);
     }
+
+    /**
+     * Generate the QR Code image and encode it straight into the given channel.
+     * @param imageFormat output format, i.e. "png".
+     * @param channel destination channel in blocking mode, it is not closed.
+     * @return false if no writer supports the format (as ImageIO.write()), nothing is written in that case.
+     * @throws IOException in case of failure of writing to the channel.
+     * @throws InvalidQRConfigException in case QR config is invalid.
+     * @throws QREncoderException in case QR Data encoding is failed.
+     * @throws ImageSizeException in case Given Imagesize is invalid or not allowed.
+     */
+    public boolean writeTo(String imageFormat, WritableByteChannel channel) throws IOException, QREncoderException, ImageSizeException, InvalidQRConfigException {
+        if (isCaching()) {
+            MappedRenderCache mapped = pin();
+            try {
+                ByteBuffer cached = getCachedImage(imageFormat, mapped);
+                if (cached == null) {
+                    return false;
+                }
+                // Straight from the mapped file for the hits of the MappedRenderCache.
+                ByteBuffer source = cached.duplicate();
+                while (source.hasRemaining()) {
+                    channel.write(source);
+                }
+                return true;
+            } finally {
+                unpin(mapped);
+            }
+        }
+        // Channels.newOutputStream() writes through to the channel, closing is left to the caller.
+        return writeTo(imageFormat, Channels.newOutputStream(channel));
+    }
+
+    /**
+     * Generate the QR Code image and encode it into the given buffer, starting at its position.
+     * @param imageFormat output format, i.e. "png".
+     * @param buffer destination buffer, its position is advanced past the image.
+     * @return number of bytes written, -1 if no writer supports the format.
+     * @throws IOException in case the image does not fit in the remaining space of the buffer, its position is left
+     * unchanged then.
+     * @throws InvalidQRConfigException in case QR config is invalid.
+     * @throws QREncoderException in case QR Data encoding is failed.
+     * @throws ImageSizeException in case Given Imagesize is invalid or not allowed.
+     */
+    public int writeTo(String imageFormat, ByteBuffer buffer) throws IOException, QREncoderException, ImageSizeException, InvalidQRConfigException {
+        if (isCaching()) {
+            MappedRenderCache mapped = pin();
+            try {
+                ByteBuffer cached = getCachedImage(imageFormat, mapped);
+                if (cached == null) {
+                    return -1;
+                }
+                if (cached.remaining() > buffer.remaining()) {
+                    throw new IOException("ByteBuffer is full, capacity:" + buffer.capacity() + ", required:" + (buffer.position() + cached.remaining()));
+                }
+                int length = cached.remaining();
+                buffer.put(cached.duplicate());
+                return length;
+            } finally {
+                unpin(mapped);
+            }
+        }
+        int start = buffer.position();
+        try {
+            if (!writeTo(imageFormat, new ByteBufferOutputStream(buffer))) {
+                return -1;
+            }
+        } catch (IOException e) {
+            // The part of the image which did fit is dropped.
+            ((Buffer) buffer).position(start);
+            throw e;
+        }
+        return buffer.position() - start;
+    }
+
+    /**
+     * Render the QR Code image in horizontal strips of about 4M pixels and stream them into a PNG,
+     * see writePngStripsTo(OutputStream, int).
+     * @param out destination stream, it is not closed.
+     * @throws IOException in case of failure of writing to the stream or of fetching the logo.
+     * @throws InvalidQRConfigException in case QR config is invalid.
+     */
+    public void writePngStripsTo(OutputStream out) throws IOException, InvalidQRConfigException {
+        int imageSize = qrConfig.getQRSize() + qrConfig.getMargin();
+        writePngStripsTo(out, Math.max(1, STRIP_PIXELS / imageSize));
+    }
+
+    /**
+     * Render the QR Code image in horizontal strips and stream each strip into a PNG as soon as it is drawn,
+     * for the large sizes (up to 264000 pixels) whose full image would not fit in memory. Only one strip is
+     * held at a time, the modules outside of it are skipped.
+     * The pixels are the ones of writeTo("png", out), except the logo which is scaled once (bilinear) from the
+     * decoded image instead of being resized in steps, and where a strip lower than a module, or than a Finder
+     * painted in place (see QRCode.MAX_FINDER_IMAGE_WIDTH), has to cut the curves of the shapes (see
+     * tileBorder()). The circle Finders painted in place may also differ by a few edge pixels: Java2D rounds an
+     * oval that large differently at the rows of the strip than at the rows of the full image. The PNG is written
+     * as RGB where the canvas can not be indexed (translucent style colors, logo), as the colors are not known
+     * before the last strip.
+     * @param out destination stream, it is not closed.
+     * @param stripHeight maximum number of pixel rows rendered at a time, the strips end on module borders.
+     * @throws IOException in case of failure of writing to the stream or of fetching the logo.
+     * @throws InvalidQRConfigException in case QR config is invalid.
+     */
+    public void writePngStripsTo(OutputStream out, int stripHeight) throws IOException, InvalidQRConfigException {
+        int qrSize = qrConfig.getQRSize();
+        int imageSize = qrSize + qrConfig.getMargin();
+        int qrXY = (imageSize - qrSize) / 2;
+        StyleSnapshot style = myQrCode.getStyle();
+        BufferedImage logo = null;
+        Dimension logoSize = null;
+        if (qrConfig.isLogoRequired()) {
+            // Decoded close to its final size, but never resized beyond the source image.
+            logo = QRUtils.getLogo(qrConfig.getLogoImageURL(), imageSize);
+            logoSize = QRUtils.getFittedLogoSize(logo.getWidth(), logo.getHeight(), imageSize);
+        }
+        int height = Math.max(1, Math.min(stripHeight, imageSize));
+        BufferedImage strip = logo == null
+                ? QRUtils.createCanvas(imageSize, height, style.getPalette())
+                : new BufferedImage(imageSize, height, BufferedImage.TYPE_INT_RGB);
+        PngWriter writer = pngWriter != null ? pngWriter : new PngWriter();
+        PngWriter.RowEncoder encoder = strip.getColorModel() instanceof IndexColorModel
+                ? writer.beginIndexed(out, imageSize, imageSize, (IndexColorModel) strip.getColorModel())
+                : writer.beginTrueColor(out, imageSize, imageSize, false);
+        try {
+            for (int top = 0, rows; top < imageSize; top += rows) {
+                rows = Math.min(height, imageSize - top);
+                // Strips lower than a Finder may have to cut it.
+                int border = tileBorder(top + rows, qrXY, false);
+                if (border > top) {
+                    rows = border - top;
+                }
+                Graphics2D g = QRCode.of(strip);
+                // Canvas coordinates, clipped to the rows of this strip.
+                g.translate(0, -top);
+                g.clipRect(0, top, imageSize, rows);
+                // Blank as a new canvas, a translucent background is blended over it.
+                g.setComposite(AlphaComposite.Clear);
+                g.fillRect(0, top, imageSize, rows);
+                g.setComposite(AlphaComposite.SrcOver);
+                g.setColor(style.backgroundColor);
+                g.fillRect(0, top, imageSize, rows);
+                myQrCode.paint(g, qrXY, qrXY);
+                if (logo != null) {
+                    QRUtils.paintOverlay(g, imageSize, imageSize, logo, logoSize.width, logoSize.height, style);
+                }
+                g.dispose();
+                encoder.writeRows(strip, 0, rows);
+            }
+            encoder.finish();
+        } finally {
+            encoder.end();
+        }
+    }
+
+    /**
+     * Generate the QR Code image and stream it Base64 encoded into the given stream. The image is encoded through
+     * the Base64 encoder as it is written, so neither the binary image nor the Base64 text is held in memory.
+     * @param imageFormat output format, i.e. "png".
+     * @param out destination stream, it is not closed.
+     * @return false if no writer supports the format, nothing is written in that case.
+     * @throws IOException in case of failure of writing to the stream.
+     * @throws InvalidQRConfigException in case QR config is invalid.
+     * @throws QREncoderException in case QR Data encoding is failed.
+     * @throws ImageSizeException in case Given Imagesize is invalid or not allowed.
+     */
+    public boolean writeBase64To(String imageFormat, OutputStream out) throws IOException, QREncoderException, ImageSizeException, InvalidQRConfigException {
+        return writeBase64(imageFormat, null, out);
+    }
+
+    /**
+     * Same as writeBase64To(String, OutputStream), appending the Base64 text to i.e. a StringBuilder or a Writer.
+     */
+    public boolean writeBase64To(String imageFormat, Appendable out) throws IOException, QREncoderException, ImageSizeException, InvalidQRConfigException {
+        return writeBase64(imageFormat, null, new AppendableOutputStream(out));
+    }
+
+    /**
+     * Generate the QR Code image and stream it as a data URI (i.e. "data:image/png;base64,...") into the given stream,
+     * ready to be embedded in HTML or JSON.
+     * @param imageFormat output format, i.e. "png".
+     * @param out destination stream, it is not closed.
+     * @return false if no writer supports the format, nothing is written in that case.
+     * @throws IOException in case of failure of writing to the stream.
+     * @throws InvalidQRConfigException in case QR config is invalid.
+     * @throws QREncoderException in case QR Data encoding is failed.
+     * @throws ImageSizeException in case Given Imagesize is invalid or not allowed.
+     */
+    public boolean writeDataURITo(String imageFormat, OutputStream out) throws IOException, QREncoderException, ImageSizeException, InvalidQRConfigException {
+        String mimeType = getMimeType(imageFormat);
+        if (mimeType == null) {
+            return false;
+        }
+        return writeBase64(imageFormat, "data:" + mimeType + ";base64,", out);
+    }
+
+    /**
+     * Same as writeDataURITo(String, OutputStream), appending the data URI to i.e. a StringBuilder or a Writer.
+     */
+    public boolean writeDataURITo(String imageFormat, Appendable out) throws IOException, QREncoderException, ImageSizeException, InvalidQRConfigException {
+        return writeDataURITo(imageFormat, new AppendableOutputStream(out));
+    }
+
+    private boolean writeBase64(String imageFormat, String prefix, OutputStream out) throws IOException, QREncoderException, ImageSizeException, InvalidQRConfigException {
+        MappedRenderCache mapped = pin();
+        try {
+            ByteBuffer cached = getCachedImage(imageFormat, mapped);
+            BufferedImage image = null;
+            if (cached == null) {
+                if (isCaching()) {
+                    return false;
+                }
+                image = generateQRImage();
+                if (!isStreamed(imageFormat)) {
+                    // Encoded first, a format refusing the image must not leave the prefix behind.
+                    byte[] encoded = encodeImage(image, imageFormat);
+                    if (encoded == null) {
+                        return false;
+                    }
+                    cached = ByteBuffer.wrap(encoded);
+                }
+            }
+            if (prefix != null) {
+                out.write(prefix.getBytes(StandardCharsets.US_ASCII));
+            }
+            // The Base64 stream writes the last block on close(), which must leave the destination open.
+            OutputStream destination = new FilterOutputStream(out) {
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    flush();
+                }
+            };
+            try (OutputStream base64 = getEncoder().wrap(destination)) {
+                if (cached != null) {
+                    write(cached, base64);
+                } else {
+                    writeImage(image, imageFormat, base64);
+                }
+            }
+            return true;
+        } finally {
+            unpin(mapped);
+        }
+    }
+
+    /**
+     * @return MIME type of the image format (i.e. "image/png"), null if no writer supports the format.
+     */
+    private static String getMimeType(String imageFormat) {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(imageFormat);
+        while (writers.hasNext()) {
+            String[] mimeTypes = writers.next().getOriginatingProvider().getMIMETypes();
+            if (mimeTypes != null && mimeTypes.length > 0) {
+                return mimeTypes[0];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Render the QR Code as SVG, with the logo linked by its URL.
+     * @param out destination, i.e. a Writer or StringBuilder.
+     * @throws IOException in case of failure of writing to the destination or of fetching the logo.
+     * @throws InvalidQRConfigException in case QR config is invalid.
+     */
+    public void writeSvgTo(Appendable out) throws IOException, InvalidQRConfigException {
+        writeSvgTo(out, false);
+    }
+
+    /**
+     * Render the QR Code as SVG. Unlike the raster formats the size of the document only depends on the number of
+     * modules, the pixel size (QR size plus margin) is set as its width and height.
+     * @param out destination, i.e. a Writer or StringBuilder.
+     * @param embedLogo true to embed the logo as a data URI, false to link it by its URL.
+     * @throws IOException in case of failure of writing to the destination or of fetching the logo.
+     * @throws InvalidQRConfigException in case QR config is invalid.
+     */
+    public void writeSvgTo(Appendable out, boolean embedLogo) throws IOException, InvalidQRConfigException {
+        int modules = myQrCode.getModuleMatrix().getWidth();
+        int size = qrConfig.getQRSize();
+        int margin = qrConfig.getMargin();
+        // Same module pitch as the raster (FinderElement.scale).
+        float scale = size / modules;
+        SvgRenderer renderer = new SvgRenderer(myQrCode.getModuleMatrix(), myQrCode.getStyle());
+        if (qrConfig.isLogoRequired()) {
+            String url = qrConfig.getLogoImageURL();
+            // The logo takes the size it has on the raster image.
+            BufferedImage logo = QRUtils.getFittedLogo(url, size + margin);
+            renderer.setLogo(embedLogo ? QRUtils.getLogoDataURI(url) : url, logo.getWidth() / scale, logo.getHeight() / scale);
+        }
+        renderer.write(out, size + margin, margin / 2f / scale);
+    }
+
+    /**
+     * Asynchronous getBinaryImage(), the render, logo fetch and image encoding run on the given executor.
+     * @param imageFormat output format, i.e. "png".
+     * @param executor executor running the render, see AsyncExecutors.newBlockingTaskExecutor().
+     * @return future of the encoded image, completed exceptionally with the same exceptions as getBinaryImage(),
+     * or with the RejectedExecutionException of an executor which does not accept the render.
+     */
+    public CompletableFuture<byte[]> getBinaryImageAsync(String imageFormat, Executor executor) {
+        CompletableFuture<byte[]> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(getBinaryImage(imageFormat));
+                } catch (Exception e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Asynchronous getBase64EncodedImage(), the render, logo fetch and image encoding run on the given executor.
+     * @param imageFormat output format, i.e. "png".
+     * @param executor executor running the render, see AsyncExecutors.newBlockingTaskExecutor().
+     * @return future of the Base64 encoded image, completed exceptionally with the same exceptions as getBase64EncodedImage().
+     */
+    public CompletableFuture<String> getBase64EncodedImageAsync(String imageFormat, Executor executor) {
+        return getBinaryImageAsync(imageFormat, executor).thenApply(content -> getEncoder().encodeToString(content));
+    }
+
+    /**
+     * Generate the QR Code images of a batch in parallel on the common ForkJoinPool.
+     * @param qrConfigs configs to generate.
+     * @param imageFormat output format, i.e. "png".
+     * @return one result per config, in the order of the given collection.
+     * @throws InterruptedException in case the calling thread is interrupted while waiting for the batch.
+     */
+    public static List<BatchResult> generateBatch(Collection<QRConfig> qrConfigs, String imageFormat) throws InterruptedException {
+        return generateBatch(qrConfigs, imageFormat, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Generate the QR Code images of a batch in parallel, one task per config.
+     * The render caches (finders, module sprites, logos) are thread safe and shared by all the workers.
+     * @param qrConfigs configs to generate.
+     * @param imageFormat output format, i.e. "png".
+     * @param executor executor running the tasks, i.e. a fixed thread pool or a ForkJoinPool sized to the cores.
+     * @return one result per config, in the order of the given collection. An invalid config only fails its own result.
+     * @throws InterruptedException in case the calling thread is interrupted while waiting for the batch.
+     */
+    public static List<BatchResult> generateBatch(Collection<QRConfig> qrConfigs, String imageFormat, ExecutorService executor) throws InterruptedException {
+        List<Callable<BatchResult>> tasks = new ArrayList<>(qrConfigs.size());
+        List<QRConfig> configs = new ArrayList<>(qrConfigs);
+        for (int i = 0; i < configs.size(); i++) {
+            final int index = i;
+            final QRConfig config = configs.get(i);
+            tasks.add(() -> generate(index, config, imageFormat));
+        }
+        return invokeAll(executor, tasks, configs);
+    }
+
+    /**
+     * Generate several renditions of one QR Code (i.e. thumbnail, web and print sizes) in parallel on the common
+     * ForkJoinPool.
+     * @param qrConfig config of the QR Code, its size is replaced by the ones of the renditions.
+     * @param renditions sizes and formats to generate.
+     * @return one result per rendition, in the given order, with the config of the rendition.
+     * @throws QREncoderException in case QR Data encoding is failed or QRConfig is null or invalid.
+     * @throws InvalidQRConfigException in case QR config is invalid.
+     * @throws IOException in case the logo can not be fetched or decoded.
+     * @throws InterruptedException in case the calling thread is interrupted while waiting for the renditions.
+     */
+    public static List<BatchResult> generateRenditions(QRConfig qrConfig, List<Rendition> renditions) throws QREncoderException, InvalidQRConfigException, IOException, InterruptedException {
+        return generateRenditions(qrConfig, renditions, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Generate several renditions of one QR Code in parallel, one task per rendition. The data is encoded once,
+     * the logo is fetched and decoded once and all the renditions share the frozen style and its RenderPlan.
+     * On a ForkJoinPool the large renditions are also split into row tiles (see setRenderPool()).
+     * @param qrConfig config of the QR Code, its size is replaced by the ones of the renditions.
+     * @param renditions sizes and formats to generate.
+     * @param executor executor running the tasks.
+     * @return one result per rendition, in the given order, with the config of the rendition. A failing rendition
+     * only fails its own result.
+     * @throws QREncoderException in case QR Data encoding is failed or QRConfig is null or invalid.
+     * @throws InvalidQRConfigException in case QR config is invalid.
+     * @throws IOException in case the logo can not be fetched or decoded.
+     * @throws InterruptedException in case the calling thread is interrupted while waiting for the renditions.
+     */
+    public static List<BatchResult> generateRenditions(QRConfig qrConfig, List<Rendition> renditions, ExecutorService executor) throws QREncoderException, InvalidQRConfigException, IOException, InterruptedException {
+        EncodedSymbol symbol = encode(qrConfig);
+        QRConfig[] configs = new QRConfig[renditions.size()];
+        int[] imageSizes = new int[configs.length];
+        for (int i = 0; i < configs.length; i++) {
+            configs[i] = qrConfig.withSize(renditions.get(i).getQRSize(symbol.getVersion()));
+            imageSizes[i] = configs[i].getQRImageSize();
+        }
+        BufferedImage[] logos = qrConfig.isLogoRequired() && configs.length > 0
+                ? QRUtils.getFittedLogos(qrConfig.getLogoImageURL(), imageSizes) : null;
+        ForkJoinPool pool = executor instanceof ForkJoinPool ? (ForkJoinPool) executor : null;
+        List<Callable<BatchResult>> tasks = new ArrayList<>(configs.length);
+        for (int i = 0; i < configs.length; i++) {
+            final int index = i;
+            final String imageFormat = renditions.get(i).getFormat();
+            final BufferedImage logo = logos != null ? logos[i] : null;
+            tasks.add(() -> {
+                try {
+                    QRGenerator generator = new QRGenerator(configs[index], symbol);
+                    generator.fittedLogo = logo;
+                    generator.setRenderPool(pool);
+                    return BatchResult.success(index, configs[index], generator.getBinaryImage(imageFormat));
+                } catch (Exception e) {
+                    return BatchResult.failure(index, configs[index], e);
+                }
+            });
+        }
+        return invokeAll(executor, tasks, Arrays.asList(configs));
+    }
+
+    /**
+     * Run the tasks of a batch and collect their results in order.
+     * @param tasks one task per config, which returns BatchResult.failure() instead of throwing an Exception.
+     * @param configs config of each task, for the result of a task which failed anyway.
+     * @return one result per task, in the order of the tasks.
+     * @throws InterruptedException in case the calling thread is interrupted while waiting for the tasks.
+     */
+    private static List<BatchResult> invokeAll(ExecutorService executor, List<Callable<BatchResult>> tasks,
+                                               List<QRConfig> configs) throws InterruptedException {
+        List<Future<BatchResult>> futures = executor.invokeAll(tasks);
+        List<BatchResult> results = new ArrayList<>(futures.size());
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                results.add(futures.get(i).get());
+            } catch (ExecutionException e) {
+                // The tasks catch the Exceptions, only Errors end up here.
+                Throwable cause = e.getCause();
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                results.add(BatchResult.failure(i, configs.get(i), e));
+            }
+        }
+        return results;
+    }
+
+    private static BatchResult generate(int index, QRConfig qrConfig, String imageFormat) {
+        try {
+            return BatchResult.success(index, qrConfig, getBinaryImage(qrConfig, imageFormat));
+        } catch (Exception e) {
+            return BatchResult.failure(index, qrConfig, e);
+        }
+    }
+
+    /**
+     * Write PNG through the PngWriter, other formats through an in-memory stream. ImageIO.write() buffers OutputStreams in a temporary file
+     * by default (ImageIO.getUseCache()), which adds disk I/O to every image and serializes parallel renders.
+     * @param destination destination stream, it is not closed.
+     * @return false if no writer supports the format (as ImageIO.write()), nothing is written in that case.
+     */
+    private static boolean writeImage(BufferedImage image, String imageFormat, OutputStream destination) throws IOException {
+        PngWriter png = pngWriter;
+        if (png != null && "png".equalsIgnoreCase(imageFormat)) {
+            png.write(image, destination);
+            return true;
+        }
+        byte[] encoded = encodeImage(image, imageFormat);
+        if (encoded == null) {
+            return false;
+        }
+        destination.write(encoded);
+        return true;
+    }
+
+    /**
+     * @return true if writeImage() streams the format straight to its destination, without encoding it first.
+     */
+    private static boolean isStreamed(String imageFormat) {
+        return pngWriter != null && "png".equalsIgnoreCase(imageFormat);
+    }
+
+    /**
+     * Encode the image with ImageIO. The indexed canvas is converted to RGB, as the canvas was before, for the
+     * writers refusing it. A writer may accept the type of the canvas and still fail on it (i.e. the WBMP writers
+     * accept every TYPE_BYTE_BINARY image but only encode the 1-bit ones), so the image is encoded in memory
+     * first and nothing reaches the destination on failure.
+     * @return the encoded image, null if no writer supports the format.
+     */
+    private static byte[] encodeImage(BufferedImage image, String imageFormat) throws IOException {
+        byte[] encoded = encodeWithAnyWriter(image, imageFormat);
+        if (encoded == null && image.getType() != BufferedImage.TYPE_INT_RGB) {
+            encoded = encodeWithAnyWriter(toRGB(image), imageFormat);
+        }
+        return encoded;
+    }
+
+    /**
+     * @return the image encoded by the first writer of the format which does not refuse it, null if none.
+     */
+    private static byte[] encodeWithAnyWriter(BufferedImage image, String imageFormat) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWriters(ImageTypeSpecifier.createFromRenderedImage(image), imageFormat);
+        while (writers.hasNext()) {
+            ImageWriter writer = writers.next();
+            if (!writer.getOriginatingProvider().canEncodeImage(image)) {
+                writer.dispose();
+                continue;
+            }
+            ByteArrayOutputStream binary = new ByteArrayOutputStream();
+            // Closing the ImageOutputStream flushes it into the array.
+            try (ImageOutputStream out = new MemoryCacheImageOutputStream(binary)) {
+                writer.setOutput(out);
+                writer.write(image);
+            } catch (RuntimeException e) {
+                // The writer refused the image itself, with an IllegalArgumentException from the JDK writers
+                // and whatever else from the plugins (jai-imageio fails on its own error message).
+                continue;
+            } finally {
+                writer.dispose();
+            }
+            return binary.toByteArray();
+        }
+        return null;
+    }
+
+    /**
+     * @return the image as RGB, as the canvas was before the indexed canvas.
+     */
+    private static BufferedImage toRGB(BufferedImage image) {
+        BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = rgb.createGraphics();
+        try {
+            g.drawImage(image, 0, 0, null);
+        } finally {
+            g.dispose();
+        }
+        return rgb;
+    }
+
     private void log(String msg){
     	//System.out.println(QRUtils.getCurrentTimeStamp()+":"+ALIAS+":-"+ msg);
     }
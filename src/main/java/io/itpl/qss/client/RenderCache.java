@@ -0,0 +1,208 @@
+package io.itpl.qss.client;
+
+import io.itpl.qss.render.StyleSnapshot;
+
+import java.awt.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+
+/**
+ * Bounded cache of the encoded images of QRGenerator (see QRGenerator.setRenderCache()).
+ * <ul>
+ * <li>Images are content addressed: the key is the SHA-256 of everything the image depends on (data, version, error
+ * correction level, size, margin, style, logo URL and format), so equal configs share one entry.
+ * <li>Entries are evicted in LRU order once the image bytes exceed maxBytes.
+ * <li>The logo is identified by its URL, a changed image at the same URL needs clear(). So does a new
+ * QRGenerator.setPngWriter(), the writer settings are not part of the key.
+ * </ul>
+ * The cache is thread safe, the images it hands out are shared and must not be modified.
+ */
+public class RenderCache {
+    /**
+     * Part of every key, to be changed when the rendering of a config changes.
+     */
+    private static final String KEY_VERSION = "qss-render-1";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final long maxBytes;
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * @param maxBytes upper bound of the image bytes held by the cache.
+     */
+    public RenderCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @param qrConfig validated config (see QRConfig.validate()) of the image.
+     * @param imageFormat output format, i.e. "png".
+     * @return the key of the image as 64 hex digits, stable across runs (i.e. usable as an HTTP ETag).
+     */
+    public static String keyOf(QRConfig qrConfig, String imageFormat) {
+        return keyOf(qrConfig, qrConfig.getStyle(), imageFormat);
+    }
+
+    /**
+     * Same as above, with the style the image is rendered with (i.e. the one of the QRCode).
+     * The 64-bit StyleSnapshot.getFingerprint() is not enough to address the images, a collision would serve the
+     * image of another style, so all the fields are hashed.
+     * @param qrConfig validated config (see QRConfig.validate()) of the image.
+     * @param style style of the image.
+     * @param imageFormat output format, i.e. "png".
+     * @return the key of the image as 64 hex digits.
+     */
+    public static String keyOf(QRConfig qrConfig, StyleSnapshot style, String imageFormat) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform supports SHA-256.
+            throw new IllegalStateException(e);
+        }
+        update(digest, KEY_VERSION);
+        update(digest, imageFormat.toLowerCase(Locale.ROOT));
+        update(digest, qrConfig.getAlphanumericData());
+        update(digest, qrConfig.getQRVersion());
+        update(digest, qrConfig.getErrorCorrectionLevel());
+        update(digest, qrConfig.getQRSize());
+        update(digest, qrConfig.getMargin());
+        update(digest, qrConfig.isLogoRequired() ? qrConfig.getLogoImageURL() : null);
+        update(digest, style.backgroundColor);
+        update(digest, style.dataColorPrimary);
+        update(digest, style.dataColorSecondary);
+        update(digest, style.dataColorMode);
+        update(digest, style.logoBackgroundColor);
+        update(digest, style.finderColor);
+        update(digest, style.finderBallColor);
+        update(digest, style.bDrawLogoBackground ? 1 : 0);
+        update(digest, style.finderBallShape);
+        update(digest, style.topLeftFinderShape);
+        update(digest, style.topRightFinderShape);
+        update(digest, style.bottomLeftFinderShape);
+        update(digest, style.dataBlockShape);
+        update(digest, Float.floatToIntBits(style.logoBkgColorTransparency));
+        update(digest, style.faceCount);
+        byte[] hash = digest.digest();
+        char[] key = new char[2 * hash.length];
+        for (int i = 0; i < hash.length; i++) {
+            key[2 * i] = HEX[(hash[i] >> 4) & 0xF];
+            key[2 * i + 1] = HEX[hash[i] & 0xF];
+        }
+        return new String(key);
+    }
+
+    /**
+     * @param key key of the image, see keyOf().
+     * @return the cached image, shared with the cache and must not be modified. null if not cached.
+     */
+    public synchronized byte[] get(String key) {
+        byte[] image = entries.get(key);
+        if (image != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return image;
+    }
+
+    /**
+     * Store an image, evicting the least recently used ones beyond maxBytes. Images larger than maxBytes
+     * are not stored.
+     * @param key key of the image, see keyOf().
+     * @param image encoded image, which must not be modified afterwards.
+     */
+    public synchronized void put(String key, byte[] image) {
+        if (image.length > maxBytes) {
+            return;
+        }
+        byte[] previous = entries.put(key, image);
+        if (previous != null) {
+            bytes -= previous.length;
+        }
+        bytes += image.length;
+        Iterator<byte[]> lru = entries.values().iterator();
+        while (bytes > maxBytes && lru.hasNext()) {
+            bytes -= lru.next().length;
+            lru.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Drop all the cached images, the counters are kept.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    /**
+     * @return image bytes currently held by the cache.
+     */
+    public synchronized long getSize() {
+        return bytes;
+    }
+
+    /**
+     * @return number of images currently held by the cache.
+     */
+    public synchronized int getCount() {
+        return entries.size();
+    }
+
+    /**
+     * @return number of get() calls which found the image.
+     */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * @return number of get() calls which did not find the image.
+     */
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * @return number of images evicted to stay within maxBytes.
+     */
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    private static void update(MessageDigest digest, int value) {
+        digest.update((byte) (value >>> 24));
+        digest.update((byte) (value >>> 16));
+        digest.update((byte) (value >>> 8));
+        digest.update((byte) value);
+    }
+
+    /**
+     * Strings are length prefixed, so the fields can not run into each other. null is length -1.
+     */
+    private static void update(MessageDigest digest, String value) {
+        if (value == null) {
+            update(digest, -1);
+            return;
+        }
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        update(digest, utf8.length);
+        digest.update(utf8);
+    }
+
+    private static void update(MessageDigest digest, Color color) {
+        // Flagged, so null can not collide with a color (getRGB() includes the alpha).
+        update(digest, color != null ? 1 : 0);
+        update(digest, color != null ? color.getRGB() : 0);
+    }
+}
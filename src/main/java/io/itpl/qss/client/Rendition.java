@@ -0,0 +1,76 @@
+package io.itpl.qss.client;
+
+import io.itpl.qss.encoder.QREncoder;
+
+/**
+ * One output of QRGenerator.generateRenditions(): a target size and an image format, i.e. a 200px "png"
+ * thumbnail, an 800px "png" for the web and a print size "png".
+ */
+public final class Rendition {
+    private final int maxPixels;
+    private final int qrSize;
+    private final String format;
+
+    private Rendition(int maxPixels, int qrSize, String format) {
+        this.maxPixels = maxPixels;
+        this.qrSize = qrSize;
+        this.format = format;
+    }
+
+    /**
+     * @param maxPixels width and height the image must fit in, margin included. The module pitch is the largest
+     * one fitting, at least 1 pixel, so the image is usually a bit smaller.
+     * @param format output format, i.e. "png".
+     * @return the rendition.
+     */
+    public static Rendition ofPixels(int maxPixels, String format) {
+        if (maxPixels < 1) {
+            throw new IllegalArgumentException("Invalid image size:" + maxPixels);
+        }
+        return new Rendition(maxPixels, 0, format);
+    }
+
+    /**
+     * @param qrSize pixels per module, as QRConfig.from(data, qrSize) (i.e. QRConfig.SIZE_SMALL).
+     * @param format output format, i.e. "png".
+     * @return the rendition.
+     */
+    public static Rendition ofSize(int qrSize, String format) {
+        if (qrSize < 1) {
+            throw new IllegalArgumentException("Invalid QR size:" + qrSize);
+        }
+        return new Rendition(0, qrSize, format);
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    /**
+     * @param version QR version of the data.
+     * @return the pixels per module of the rendition for the given version.
+     */
+    int getQRSize(int version) {
+        if (qrSize > 0) {
+            return qrSize;
+        }
+        int modules = QREncoder.getModuleCount(version);
+        int size = 1;
+        while (imageSize(modules * (size + 1)) <= maxPixels) {
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * @return width of the image of a QR Code of the given width, see QRConfig.getMargin().
+     */
+    private static int imageSize(int qrWidth) {
+        return qrWidth + Math.round(qrWidth * 0.1f);
+    }
+
+    @Override
+    public String toString() {
+        return "Rendition(" + (qrSize > 0 ? "size:" + qrSize : maxPixels + "px") + ", " + format + ")";
+    }
+}
@@ -0,0 +1,108 @@
+package io.itpl.qss.encoder;
+
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import io.itpl.qss.exception.QREncoderException;
+
+/**
+ * The result of encoding data into a QR Code: the module matrix with its version, error correction level and mask.
+ * The symbol does not depend on the pixel size or the style of the image, so it can be rendered any number of times
+ * (i.e. new QRCode(symbol, size, style), or new QRGenerator(qrConfig, symbol)) without paying for the Reed-Solomon
+ * coding and the mask selection again.
+ * The symbol is immutable and can be shared between threads.
+ */
+public final class EncodedSymbol {
+    private final String data;
+    private final int version;
+    private final int errorLevel;
+    private final ErrorCorrectionLevel errorCorrectionLevel;
+    private final int maskPattern;
+    private final ModuleMatrix modules;
+
+    EncodedSymbol(String data, int version, int errorLevel, ErrorCorrectionLevel errorCorrectionLevel,
+                  int maskPattern, ModuleMatrix modules) {
+        this.data = data;
+        this.version = version;
+        this.errorLevel = errorLevel;
+        this.errorCorrectionLevel = errorCorrectionLevel;
+        this.maskPattern = maskPattern;
+        this.modules = modules;
+    }
+
+    /**
+     * @param data Text Data which need to be encoded in QR Code.
+     * @param version Version of the QR Code to be used.
+     * @param errorLevel level of Error Correction, as QRConfig.getErrorCorrectionLevel().
+     * @return the encoded symbol.
+     * @throws QREncoderException in case the data does not fit the version.
+     */
+    public static EncodedSymbol encode(String data, int version, int errorLevel) throws QREncoderException {
+        QREncoder encoder = new QREncoder(version, 0, errorLevel);
+        if (!encoder.encodeQRData(data)) {
+            throw new QREncoderException("Invalid Data or Length of the Data");
+        }
+        return encoder.getSymbol();
+    }
+
+    /**
+     * @return the encoded data.
+     */
+    public String getData() {
+        return data;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the error level the symbol was encoded for, as QRConfig.getErrorCorrectionLevel().
+     */
+    public int getErrorLevel() {
+        return errorLevel;
+    }
+
+    /**
+     * @return the error correction level of the symbol.
+     */
+    public ErrorCorrectionLevel getErrorCorrectionLevel() {
+        return errorCorrectionLevel;
+    }
+
+    /**
+     * @return the data mask (0..7) chosen by the encoder.
+     */
+    public int getMaskPattern() {
+        return maskPattern;
+    }
+
+    /**
+     * @return no's of modules on each side of the symbol.
+     */
+    public int getModuleCount() {
+        return modules.getWidth();
+    }
+
+    public ModuleMatrix getModuleMatrix() {
+        return modules;
+    }
+
+    /**
+     * @return the shared function patterns of the version of the symbol.
+     */
+    public FunctionPatternMask getFunctionPatterns() {
+        return FunctionPatternMask.forVersion(version);
+    }
+
+    /**
+     * @return true if the symbol encodes the given data with the given version and error level.
+     */
+    public boolean matches(String data, int version, int errorLevel) {
+        return this.version == version && this.errorLevel == errorLevel && this.data.equals(data);
+    }
+
+    @Override
+    public String toString() {
+        return "EncodedSymbol(version:" + version + ", ECL:" + errorCorrectionLevel + ", mask:" + maskPattern
+                + ", data:[" + data.length() + "])";
+    }
+}
@@ -0,0 +1,148 @@
+package io.itpl.qss.encoder;
+
+/**
+ * Precomputed masks of the function patterns of a QR version. The layout only depends on the version,
+ * so one instance per version is built on first use and shared by all the renders afterwards.
+ * <ul>
+ * <li>Finder mask - the three finder patterns with their separators. Renderers draw the finders on their own,
+ * so these modules are skipped while drawing the data.
+ * <li>Function mask - finders, separators, timing patterns and alignment patterns.
+ * </ul>
+ */
+public final class FunctionPatternMask {
+
+    /**
+     * Center coordinates of the alignment patterns for version 1..40 (ISO/IEC 18004 Annex E).
+     */
+    private static final int[][] ALIGNMENT_PATTERN_CENTERS = {
+            {},
+            {6, 18},
+            {6, 22},
+            {6, 26},
+            {6, 30},
+            {6, 34},
+            {6, 22, 38},
+            {6, 24, 42},
+            {6, 26, 46},
+            {6, 28, 50},
+            {6, 30, 54},
+            {6, 32, 58},
+            {6, 34, 62},
+            {6, 26, 46, 66},
+            {6, 26, 48, 70},
+            {6, 26, 50, 74},
+            {6, 30, 54, 78},
+            {6, 30, 56, 82},
+            {6, 30, 58, 86},
+            {6, 34, 62, 90},
+            {6, 28, 50, 72, 94},
+            {6, 26, 50, 74, 98},
+            {6, 30, 54, 78, 102},
+            {6, 28, 54, 80, 106},
+            {6, 32, 58, 84, 110},
+            {6, 30, 58, 86, 114},
+            {6, 34, 62, 90, 118},
+            {6, 26, 50, 74, 98, 122},
+            {6, 30, 54, 78, 102, 126},
+            {6, 26, 52, 78, 104, 130},
+            {6, 30, 56, 82, 108, 134},
+            {6, 34, 60, 86, 112, 138},
+            {6, 30, 58, 86, 114, 142},
+            {6, 34, 62, 90, 118, 146},
+            {6, 30, 54, 78, 102, 126, 150},
+            {6, 24, 50, 76, 102, 128, 154},
+            {6, 28, 54, 80, 106, 132, 158},
+            {6, 32, 58, 84, 110, 136, 162},
+            {6, 26, 54, 82, 110, 138, 166},
+            {6, 30, 58, 86, 114, 142, 170}
+    };
+
+    private static final FunctionPatternMask[] MASKS = new FunctionPatternMask[QREncoder.MAX_VERSION + 1];
+
+    private final int version;
+    private final ModuleMatrix finderMask;
+    private final ModuleMatrix functionMask;
+
+    private FunctionPatternMask(int version) {
+        this.version = version;
+        int width = QREncoder.getModuleCount(version);
+
+        ModuleMatrix.Builder finders = new ModuleMatrix.Builder(width);
+        // Finder pattern (7x7) plus the one module separator around it.
+        finders.setRegion(0, 0, 8, 8);
+        finders.setRegion(width - 8, 0, 8, 8);
+        finders.setRegion(0, width - 8, 8, 8);
+        this.finderMask = finders.build();
+
+        ModuleMatrix.Builder functions = new ModuleMatrix.Builder(width);
+        functions.setRegion(0, 0, 8, 8);
+        functions.setRegion(width - 8, 0, 8, 8);
+        functions.setRegion(0, width - 8, 8, 8);
+        // Timing patterns run along row 6 and column 6 between the separators.
+        functions.setRegion(8, 6, width - 16, 1);
+        functions.setRegion(6, 8, 1, width - 16);
+        // Alignment patterns (5x5) on every center pair, except the ones overlapping the finders.
+        int[] centers = ALIGNMENT_PATTERN_CENTERS[version - 1];
+        for (int cx : centers) {
+            for (int cy : centers) {
+                if (finderMask.get(cx, cy)) {
+                    continue;
+                }
+                functions.setRegion(cx - 2, cy - 2, 5, 5);
+            }
+        }
+        this.functionMask = functions.build();
+    }
+
+    /**
+     * @param version QR version (1..40)
+     * @return the shared mask for the given version.
+     */
+    public static FunctionPatternMask forVersion(int version) {
+        if (version < QREncoder.MIN_VERSION || version > QREncoder.MAX_VERSION) {
+            throw new IllegalArgumentException("Invalid QR version:" + version);
+        }
+        synchronized (MASKS) {
+            FunctionPatternMask mask = MASKS[version];
+            if (mask == null) {
+                mask = new FunctionPatternMask(version);
+                MASKS[version] = mask;
+            }
+            return mask;
+        }
+    }
+
+    /**
+     * @param matrix encoded module matrix.
+     * @return the shared mask for the version of the given matrix.
+     */
+    public static FunctionPatternMask forMatrix(ModuleMatrix matrix) {
+        return forVersion(((matrix.getWidth() - 21) / 4) + 1);
+    }
+
+    public int getVersion() {
+        return this.version;
+    }
+
+    /**
+     * @return true if the module at (x,y) belongs to a finder pattern or its separator.
+     */
+    public boolean isFinder(int x, int y) {
+        return finderMask.get(x, y);
+    }
+
+    /**
+     * @return true if the module at (x,y) belongs to any of the function patterns.
+     */
+    public boolean isFunction(int x, int y) {
+        return functionMask.get(x, y);
+    }
+
+    public ModuleMatrix getFinderMask() {
+        return this.finderMask;
+    }
+
+    public ModuleMatrix getFunctionMask() {
+        return this.functionMask;
+    }
+}
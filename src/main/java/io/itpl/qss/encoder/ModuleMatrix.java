@@ -0,0 +1,238 @@
+package io.itpl.qss.encoder;
+
+import com.google.zxing.qrcode.encoder.ByteMatrix;
+
+import java.util.Arrays;
+
+/**
+ * Immutable, bit-packed square matrix of QR modules (Dark = true).
+ * Each row is stored as consecutive 64 bit words in one flat long[], so a version 40 code (177 x 177)
+ * needs 3 words per row instead of 177 bytes plus an array header.
+ * Bit (x % 64) of word (x / 64) in row y holds the module at column x.
+ * Positions outside the matrix are reported as Light, which keeps neighbour lookups at the edges branch free.
+ */
+public final class ModuleMatrix {
+    /**
+     * Neighbour bits as returned by {@link #getNeighbours(int, int)}.
+     */
+    public static final int NEIGHBOUR_UP = 1;
+    public static final int NEIGHBOUR_DOWN = 2;
+    public static final int NEIGHBOUR_LEFT = 4;
+    public static final int NEIGHBOUR_RIGHT = 8;
+
+    private final int width;
+    private final int wordsPerRow;
+    private final long[] words;
+
+    private ModuleMatrix(int width, long[] words) {
+        this.width = width;
+        this.wordsPerRow = (width + 63) >>> 6;
+        this.words = words;
+    }
+
+    /**
+     * @param matrix Module matrix as produced by the ZXing encoder.
+     * @return packed copy of the given matrix.
+     */
+    public static ModuleMatrix from(ByteMatrix matrix) {
+        Builder builder = new Builder(matrix.getWidth());
+        for (int y = 0; y < matrix.getHeight(); y++) {
+            for (int x = 0; x < matrix.getWidth(); x++) {
+                if (matrix.get(x, y) == 1) {
+                    builder.set(x, y);
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * @param data Module matrix indexed as data[x][y], wherein 1 is a Dark module.
+     * @return packed copy of the given matrix.
+     */
+    public static ModuleMatrix from(byte[][] data) {
+        Builder builder = new Builder(data.length);
+        for (int x = 0; x < data.length; x++) {
+            for (int y = 0; y < data[x].length; y++) {
+                if (data[x][y] == 1) {
+                    builder.set(x, y);
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return no's of modules on each side.
+     */
+    public int getWidth() {
+        return this.width;
+    }
+
+    /**
+     * @return true if the module at (x,y) is Dark, false if it is Light or outside the matrix.
+     */
+    public boolean get(int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= width) {
+            return false;
+        }
+        return (words[y * wordsPerRow + (x >>> 6)] & (1L << x)) != 0;
+    }
+
+    /**
+     * @return no's of 64 bit words used by each row.
+     */
+    public int getWordsPerRow() {
+        return this.wordsPerRow;
+    }
+
+    /**
+     * @param y row of the matrix.
+     * @param word index of the word within the row.
+     * @return 64 modules of the row starting at column (word * 64), or 0 for rows outside the matrix.
+     */
+    public long getWord(int y, int word) {
+        if (y < 0 || y >= width || word < 0 || word >= wordsPerRow) {
+            return 0L;
+        }
+        return words[y * wordsPerRow + word];
+    }
+
+    /**
+     * Copies the words of one row.
+     * @param y row of the matrix.
+     * @param into target array, allocated when null or too small.
+     * @return the array holding the row.
+     */
+    public long[] getRow(int y, long[] into) {
+        if (into == null || into.length < wordsPerRow) {
+            into = new long[wordsPerRow];
+        }
+        System.arraycopy(words, y * wordsPerRow, into, 0, wordsPerRow);
+        return into;
+    }
+
+    /**
+     * Bulk neighbour query: bit k of the result is the Left neighbour of the module at column (word * 64 + k).
+     */
+    public long getLeftNeighbours(int y, int word) {
+        return (getWord(y, word) << 1) | (getWord(y, word - 1) >>> 63);
+    }
+
+    /**
+     * Bulk neighbour query: bit k of the result is the Right neighbour of the module at column (word * 64 + k).
+     */
+    public long getRightNeighbours(int y, int word) {
+        return (getWord(y, word) >>> 1) | (getWord(y, word + 1) << 63);
+    }
+
+    /**
+     * Bulk neighbour query: bit k of the result is the Up neighbour of the module at column (word * 64 + k).
+     */
+    public long getUpNeighbours(int y, int word) {
+        return getWord(y - 1, word);
+    }
+
+    /**
+     * Bulk neighbour query: bit k of the result is the Down neighbour of the module at column (word * 64 + k).
+     */
+    public long getDownNeighbours(int y, int word) {
+        return getWord(y + 1, word);
+    }
+
+    /**
+     * @return the 4 neighbours of the module at (x,y) packed as NEIGHBOUR_* bits. Neighbours outside the matrix are Light.
+     */
+    public int getNeighbours(int x, int y) {
+        int code = 0;
+        if (get(x, y - 1)) code |= NEIGHBOUR_UP;
+        if (get(x, y + 1)) code |= NEIGHBOUR_DOWN;
+        if (get(x - 1, y)) code |= NEIGHBOUR_LEFT;
+        if (get(x + 1, y)) code |= NEIGHBOUR_RIGHT;
+        return code;
+    }
+
+    /**
+     * @return no's of Dark modules.
+     */
+    public int countDark() {
+        int count = 0;
+        for (long word : words) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * @return unpacked copy indexed as data[x][y], wherein 1 is a Dark module.
+     */
+    public byte[][] toArray() {
+        byte[][] data = new byte[width][width];
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < width; y++) {
+                data[x][y] = (byte) (get(x, y) ? 1 : 0);
+            }
+        }
+        return data;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ModuleMatrix)) return false;
+        ModuleMatrix other = (ModuleMatrix) o;
+        return width == other.width && Arrays.equals(words, other.words);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * width + Arrays.hashCode(words);
+    }
+
+    public String toString() {
+        StringBuilder data = new StringBuilder(width * (width + 1));
+        for (int y = 0; y < width; y++) {
+            for (int x = 0; x < width; x++) {
+                data.append(get(x, y) ? '1' : '0');
+            }
+            data.append('\n');
+        }
+        return data.toString();
+    }
+
+    /**
+     * Mutable counterpart used while the matrix is being filled. build() hands out an immutable copy.
+     */
+    public static final class Builder {
+        private final int width;
+        private final int wordsPerRow;
+        private final long[] words;
+
+        public Builder(int width) {
+            this.width = width;
+            this.wordsPerRow = (width + 63) >>> 6;
+            this.words = new long[wordsPerRow * width];
+        }
+
+        public Builder set(int x, int y) {
+            words[y * wordsPerRow + (x >>> 6)] |= (1L << x);
+            return this;
+        }
+
+        /**
+         * Marks the rectangle (x,y,w,h), clipped to the matrix.
+         */
+        public Builder setRegion(int x, int y, int w, int h) {
+            for (int row = Math.max(0, y); row < Math.min(width, y + h); row++) {
+                for (int col = Math.max(0, x); col < Math.min(width, x + w); col++) {
+                    set(col, row);
+                }
+            }
+            return this;
+        }
+
+        public ModuleMatrix build() {
+            return new ModuleMatrix(width, words.clone());
+        }
+    }
+}
@@ -1,10 +1,9 @@
 package io.itpl.qss.encoder;
 
-import com.google.zxing.BarcodeFormat;
 import com.google.zxing.EncodeHintType;
-import com.google.zxing.common.BitMatrix;
-import com.google.zxing.qrcode.QRCodeWriter;
 import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import com.google.zxing.qrcode.encoder.Encoder;
+import com.google.zxing.qrcode.encoder.QRCode;
 import io.itpl.qss.exception.QREncoderException;
 
 
@@ -16,20 +15,32 @@ public class QREncoder {
 	
 	
     public int version = 2;
+    /**
+     * Pixel size of the rendered QR Code. The encoder itself works on modules and does not scale the matrix to this size.
+     */
     public int size = 25;
     public ErrorCorrectionLevel errorCorrectionLevel = ErrorCorrectionLevel.L;
-    public byte [][] encodedData;
+    /**
+     * The bit-packed module matrix (21..177 modules per side depending on the version).
+     */
+    private ModuleMatrix encodedData;
+    private int errorLevel;
+    /**
+     * The last encoded data, null before.
+     */
+    private EncodedSymbol symbol;
     
     public static final int MAX_DATA_CAPACITY = 4296;
     public static final int MIN_VERSION = 1;
     public static final int MAX_VERSION = 40;
     
     public QREncoder(){
-        encodedData = new byte[this.size][this.size];
+        encodedData = new ModuleMatrix.Builder(getModuleCount(this.version)).build();
     }
     public QREncoder(int version,int size, int errorLevel){
         this.version = version;
         this.size = size;
+        this.errorLevel = errorLevel;
         switch(errorLevel) {
 	        case 0:
 	        	this.errorCorrectionLevel = ErrorCorrectionLevel.L;
@@ -44,20 +55,23 @@ public class QREncoder {
 	        	this.errorCorrectionLevel = ErrorCorrectionLevel.H;
 	        	break;
         }
-        encodedData = new byte[this.size][this.size];
+        encodedData = new ModuleMatrix.Builder(getModuleCount(this.version)).build();
+    }
+    /**
+     * @param version QR version (1..40)
+     * @return no's of modules on each side of the QR Code for the given version.
+     */
+    public static int getModuleCount(int version) {
+        return ((version - 1) * 4) + 21;
     }
-    private BitMatrix encode(String data){
+    private QRCode encode(String data){
 		try{
 			Map<EncodeHintType, Object> hintMap = new EnumMap<EncodeHintType, Object>(EncodeHintType.class);
 			hintMap.put(EncodeHintType.CHARACTER_SET, "UTF-8");
 			hintMap.put(EncodeHintType.QR_VERSION, this.version);
-			hintMap.put(EncodeHintType.MARGIN, 0); /* default = 4 */
-			hintMap.put(EncodeHintType.ERROR_CORRECTION, this.errorCorrectionLevel);
 
-			QRCodeWriter qrCodeWriter = new QRCodeWriter();
-			BitMatrix byteMatrix = qrCodeWriter.encode(data, BarcodeFormat.QR_CODE, this.size,
-						size, hintMap);
-			return byteMatrix;
+			// Encode straight to the module matrix, the renderer takes care of the pixel pitch.
+			return Encoder.encode(data, this.errorCorrectionLevel, hintMap);
 
 		}catch(Exception e){
 			e.printStackTrace();
@@ -65,28 +79,37 @@ public class QREncoder {
 		}
     } 
     public boolean encodeQRData(String data){
-        BitMatrix byteMatrix = encode(data);
-        if(byteMatrix!=null){
-            int iWidth = byteMatrix.getWidth(); 
-            for (int i = 0; i < iWidth; i++) {
-                for (int j = 0; j < iWidth; j++) {
-                    //System.out.print(byteMatrix.get(i, j)?"|1":"|0");
-                    if (byteMatrix.get(i, j)) {
-                        encodedData[i][j] = 1;
-                    }else{
-                        encodedData[i][j] = 0;
-                    }
-                }
-            }
-            
+        QRCode code = encode(data);
+        if(code!=null){
+            encodedData = ModuleMatrix.from(code.getMatrix());
+            symbol = new EncodedSymbol(data, this.version, this.errorLevel, this.errorCorrectionLevel,
+                    code.getMaskPattern(), encodedData);
             return true;
         }else{
             return false;
         }   
     }
+    /**
+     * Replaces the public encodedData array, which is now the private ModuleMatrix.
+     * @return unpacked copy of the module matrix indexed as [x][y], one entry per module.
+     * @deprecated use getModuleMatrix(), which does not copy.
+     */
+    @Deprecated
     public byte[][] getEncodedQRMetrix(){
+        return this.encodedData.toArray();
+    }
+    /**
+     * @return the immutable module matrix of the last encoded data.
+     */
+    public ModuleMatrix getModuleMatrix(){
         return this.encodedData;
     }
+    /**
+     * @return the last encoded data with its version, error correction level and mask, null before encodeQRData().
+     */
+    public EncodedSymbol getSymbol(){
+        return this.symbol;
+    }
    
     /**
      * @param dataLength - Size of the data to be encoded in QR Code.
@@ -0,0 +1,97 @@
+package io.itpl.qss.render;
+
+import io.itpl.qss.encoder.ModuleMatrix;
+
+/**
+ * Location type (QRCode.BLOCK_*) of every Dark data module, classified in one pass over the module matrix.
+ * Each module packs its 4 neighbours into a code (ModuleMatrix.NEIGHBOUR_*) which is mapped through a lookup table,
+ * so the linear data shapes cost one table read per module while drawing.
+ */
+final class DataBlockMatrix {
+    /**
+     * Light module, or a module that is skipped because it belongs to a Finder pattern.
+     */
+    static final byte BLOCK_NONE = -1;
+
+    private static final byte[] LOCATION_TABLE = new byte[16];
+
+    static {
+        for (int code = 0; code < LOCATION_TABLE.length; code++) {
+            boolean up = (code & ModuleMatrix.NEIGHBOUR_UP) != 0;
+            boolean down = (code & ModuleMatrix.NEIGHBOUR_DOWN) != 0;
+            boolean left = (code & ModuleMatrix.NEIGHBOUR_LEFT) != 0;
+            boolean right = (code & ModuleMatrix.NEIGHBOUR_RIGHT) != 0;
+            int type;
+            if ((left && right) || (up && down)) {
+                type = QRCode.BLOCK_MID;
+            } else if (left) {
+                // |1 1 0| with nothing, Up or Down
+                type = up ? QRCode.BLOCK_CORNER_BOTTOM_RIGHT : down ? QRCode.BLOCK_CORNER_TOP_RIGHT : QRCode.BLOCK_RIGHT_END;
+            } else if (right) {
+                // |0 1 1| with nothing, Up or Down
+                type = up ? QRCode.BLOCK_CORNER_BOTTOM_LEFT : down ? QRCode.BLOCK_CORNER_TOP_LEFT : QRCode.BLOCK_LEFT_END;
+            } else {
+                // |0 1 0| with nothing, Up or Down
+                type = up ? QRCode.BLOCK_BOTTOM_END : down ? QRCode.BLOCK_TOP_END : QRCode.BLOCK_ISOLATED;
+            }
+            LOCATION_TABLE[code] = (byte) type;
+        }
+    }
+
+    private final int width;
+    private final byte[] blocks;
+
+    private DataBlockMatrix(int width, byte[] blocks) {
+        this.width = width;
+        this.blocks = blocks;
+    }
+
+    /**
+     * @param modules encoded module matrix.
+     * @param skip modules which are not classified (i.e. Finder patterns), may be null.
+     * @return the classified matrix.
+     */
+    static DataBlockMatrix classify(ModuleMatrix modules, ModuleMatrix skip) {
+        int width = modules.getWidth();
+        byte[] blocks = new byte[width * width];
+        java.util.Arrays.fill(blocks, BLOCK_NONE);
+        int words = modules.getWordsPerRow();
+        for (int y = 0; y < width; y++) {
+            for (int w = 0; w < words; w++) {
+                long dark = modules.getWord(y, w);
+                if (skip != null) {
+                    dark &= ~skip.getWord(y, w);
+                }
+                if (dark == 0) {
+                    continue;
+                }
+                long up = modules.getUpNeighbours(y, w);
+                long down = modules.getDownNeighbours(y, w);
+                long left = modules.getLeftNeighbours(y, w);
+                long right = modules.getRightNeighbours(y, w);
+                int rowStart = y * width + (w << 6);
+                while (dark != 0) {
+                    int bit = Long.numberOfTrailingZeros(dark);
+                    int code = (int) ((up >>> bit) & 1)
+                            | (int) ((down >>> bit) & 1) << 1
+                            | (int) ((left >>> bit) & 1) << 2
+                            | (int) ((right >>> bit) & 1) << 3;
+                    blocks[rowStart + bit] = LOCATION_TABLE[code];
+                    dark &= dark - 1;
+                }
+            }
+        }
+        return new DataBlockMatrix(width, blocks);
+    }
+
+    int getWidth() {
+        return this.width;
+    }
+
+    /**
+     * @return QRCode.BLOCK_* type of the module at (x,y), or BLOCK_NONE.
+     */
+    int get(int x, int y) {
+        return blocks[y * width + x];
+    }
+}
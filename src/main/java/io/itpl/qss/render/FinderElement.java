@@ -3,6 +3,7 @@ package io.itpl.qss.render;
 
 
 import io.itpl.qss.exception.InvalidQRConfigException;
+import io.itpl.qss.utils.QRUtils;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
@@ -46,7 +47,11 @@ public class FinderElement {
     public int ballWidth = 3;
 
     private int finderShape;
-    private StyleConfig style = StyleConfig.getDefaultStyleConfig();
+    private StyleSnapshot style = StyleConfig.getDefaultStyleConfig().freeze();
+    /**
+     * Paints the finderShape, null if the shape is not supported.
+     */
+    private RenderPlan.FinderPainter painter;
 
     /**
      * 
@@ -70,6 +75,7 @@ public class FinderElement {
         this.scale = this.qr_size / modules;
         //log("QR Module+ "+modules+",Scale:" + scale);
         createFinder();
+        this.painter = RenderPlan.compile(style).getFinderPainter(location);
 
     }
 
@@ -151,29 +157,64 @@ public class FinderElement {
 
         //
         //log("Finder[" + this.finderLocation + "], Shape:" + this.finderShape);
-        switch (this.finderShape) {
-        case StyleConfig.FINDER_SQURE:
-            return this.toSquareImage();
-
-        case StyleConfig.FINDER_CIRCLE:
-            return this.toCircleImage();
-
-        case StyleConfig.FINDER_ROUNDED_SQUARE:
-            return this.toRoundedCornerSquare();
-
-        case StyleConfig.FINDER_HEXAGON:
-            return this.toHexagoneImage();
+        if (this.painter == null) {
+            throw new InvalidQRConfigException("Finder Style not found:" + finderShape);
+        }
+        BufferedImage image = QRUtils.createCanvas(this.finderWidth, this.finderWidth,
+                style.backgroundColor, style.finderColor, style.finderBallColor);
+        Graphics2D g = QRCode.of(image);
+        this.painter.paint(this, g);
+        g.dispose();
+        return image;
+    }
 
-        case StyleConfig.FINDER_OPP_ROUND_CORNERS:
-            return this.toOppRoundCornerSquare();
+    /**
+     * Draw the Finder pattern with its top-left corner at (x,y) of the given graphics.
+     * @throws InvalidQRConfigException in case the Finder shape is not supported.
+     */
+    public void paint(Graphics2D g, int x, int y) throws InvalidQRConfigException {
+        if (this.painter == null) {
+            throw new InvalidQRConfigException("Finder Style not found:" + finderShape);
+        }
+        Graphics2D fg = (Graphics2D) g.create();
+        fg.translate(x, y);
+        try {
+            this.painter.paint(this, fg);
+        } finally {
+            fg.dispose();
+        }
+    }
 
+    /**
+     * Same as toImage(), but the raster is shared through the FinderImageCache with every other Finder of the
+     * same look. The returned image must not be modified.
+     */
+    BufferedImage toSharedImage() throws InvalidQRConfigException {
+        if (this.finderWidth > QRCode.MAX_FINDER_IMAGE_WIDTH) {
+            return toImage();
+        }
+        // Only the opposite-round-corners shape looks different on the Top-Left corner.
+        boolean mirrored = this.finderShape == StyleConfig.FINDER_OPP_ROUND_CORNERS && this.finderLocation == 0;
+        FinderImageCache.Key key = new FinderImageCache.Key(this.finderShape, this.style.finderBallShape,
+                this.style.finderColor, this.style.finderBallColor, this.style.backgroundColor,
+                this.finderWidth, this.innerFrameWidth, this.ballWidth, this.style.faceCount, mirrored);
+        BufferedImage image = FinderImageCache.get(key);
+        if (image == null) {
+            image = FinderImageCache.put(key, toImage());
         }
-        throw new InvalidQRConfigException("Finder Style not found:" + finderShape);
+        return image;
     }
 
     public BufferedImage toSquareImage() {
-        BufferedImage image = new BufferedImage(this.finderWidth, this.finderWidth, BufferedImage.TYPE_INT_RGB);
+        BufferedImage image = QRUtils.createCanvas(this.finderWidth, this.finderWidth,
+                style.backgroundColor, style.finderColor, style.finderBallColor);
         Graphics2D g = QRCode.of(image);
+        paintSquare(g);
+        g.dispose();
+        return image;
+    }
+
+    void paintSquare(Graphics2D g) {
         g.setColor(style.finderColor);
         g.fillRect(0, 0, this.finderWidth, this.finderWidth);
         int innerFrameMargin = (this.finderWidth - this.innerFrameWidth) / 2;
@@ -182,12 +223,18 @@ public class FinderElement {
         g.fillRect(innerFrameMargin, innerFrameMargin, this.innerFrameWidth, this.innerFrameWidth);
         g.setColor(style.finderBallColor);
         g.fillRect(ballMargin, ballMargin, this.ballWidth, this.ballWidth);
-        return image;
     }
 
     public BufferedImage toRoundedCornerSquare() {
-        BufferedImage image = new BufferedImage(this.finderWidth, this.finderWidth, BufferedImage.TYPE_INT_RGB);
+        BufferedImage image = QRUtils.createCanvas(this.finderWidth, this.finderWidth,
+                style.backgroundColor, style.finderColor, style.finderBallColor);
         Graphics2D g = QRCode.of(image);
+        paintRoundedCornerSquare(g);
+        g.dispose();
+        return image;
+    }
+
+    void paintRoundedCornerSquare(Graphics2D g) {
         g.setColor(style.backgroundColor);
         g.fillRect(0, 0, finderWidth, finderWidth);
         g.setColor(style.finderColor);
@@ -210,12 +257,18 @@ public class FinderElement {
             g.fillOval(ballMargin, ballMargin, this.ballWidth, this.ballWidth);
                 break;
         }
-        return image;
     }
 
     public BufferedImage toOppRoundCornerSquare() {
-        BufferedImage image = new BufferedImage(this.finderWidth, this.finderWidth, BufferedImage.TYPE_INT_RGB);
+        BufferedImage image = QRUtils.createCanvas(this.finderWidth, this.finderWidth,
+                style.backgroundColor, style.finderColor, style.finderBallColor);
         Graphics2D g = QRCode.of(image);
+        paintOppRoundCornerSquare(g);
+        g.dispose();
+        return image;
+    }
+
+    void paintOppRoundCornerSquare(Graphics2D g) {
         g.setColor(style.backgroundColor);
         g.fillRect(0, 0, this.finderWidth, this.finderWidth);
         /* This Shape is made of 3 shapes
@@ -311,13 +364,18 @@ public class FinderElement {
         //3. Corner B
         g.fillRect(innerRectBX, innerRectBY, innerRectWidth, innerRectWidth);//
         //Finish!
-        g.dispose();
-        return image;
     }
 
     public BufferedImage toCircleImage() {
-        BufferedImage image = new BufferedImage(this.finderWidth, this.finderWidth, BufferedImage.TYPE_INT_RGB);
+        BufferedImage image = QRUtils.createCanvas(this.finderWidth, this.finderWidth,
+                style.backgroundColor, style.finderColor, style.finderBallColor);
         Graphics2D g = QRCode.of(image);
+        paintCircle(g);
+        g.dispose();
+        return image;
+    }
+
+    void paintCircle(Graphics2D g) {
         g.setColor(style.backgroundColor);
         g.fillRect(0, 0, finderWidth, finderWidth);
         g.setColor(style.finderColor);
@@ -328,12 +386,11 @@ public class FinderElement {
         g.fillOval(innerFrameMargin, innerFrameMargin, this.innerFrameWidth, this.innerFrameWidth);
         g.setColor(style.finderBallColor);
         g.fillOval(ballMargin, ballMargin, this.ballWidth, this.ballWidth);
-        g.dispose();
-        return image;
     }
 
     public BufferedImage toRightCircleImage() {
-        BufferedImage image = new BufferedImage(this.finderWidth, this.finderWidth, BufferedImage.TYPE_INT_RGB);
+        BufferedImage image = QRUtils.createCanvas(this.finderWidth, this.finderWidth,
+                style.backgroundColor, style.finderColor, style.finderBallColor);
         Graphics2D g = QRCode.of(image);
         g.setColor(style.backgroundColor);
         g.fillRect(0, 0, finderWidth, finderWidth);
@@ -357,12 +414,19 @@ public class FinderElement {
     
 
     public BufferedImage toHexagoneImage() {
+        BufferedImage image = QRUtils.createCanvas(this.finderWidth, this.finderWidth,
+                style.backgroundColor, style.finderColor, style.finderBallColor);
+        Graphics2D g = QRCode.of(image);
+        paintHexagon(g);
+        g.dispose();
+        return image;
+    }
+
+    void paintHexagon(Graphics2D g) {
         Polygon outer = this.toPolygon(0);
         Polygon inner = this.toPolygon(1);
         Polygon ball = this.toPolygon(2);
 
-        BufferedImage image = new BufferedImage(this.finderWidth, this.finderWidth, BufferedImage.TYPE_INT_RGB);
-        Graphics2D g = QRCode.of(image);
         g.setColor(style.backgroundColor);
         g.fillRect(0, 0, finderWidth, finderWidth);
         g.setColor(style.finderColor);
@@ -371,7 +435,6 @@ public class FinderElement {
         g.fillPolygon(inner);
         g.setColor(style.finderBallColor);
         g.fillPolygon(ball);
-        return image;
     }
 
     /**
@@ -386,9 +449,6 @@ public class FinderElement {
      */
     public boolean contains(int x, int y) {
         boolean result = false;
-        // This msg is used for debug only. it has no role in core logic.
-        StringBuffer msg = new StringBuffer();
-        msg.append("Contains-(" + x + "," + y + ") In FinderElement[" + this.finderLocation + "]");
         // The position (OuterFrameX, outerFrameY) of each FinerElement is different.
         // Range for the FinderElement Body will be different respective to the
         // finderLocation.
@@ -420,8 +480,7 @@ public class FinderElement {
             }
             break;
         }
-        msg.append("==>Result: " + result);
-        // log(msg.toString());
+        // log("Contains-(" + x + "," + y + ") In FinderElement[" + this.finderLocation + "]==>Result: " + result);
         return result;
     }
 
@@ -451,12 +510,21 @@ public class FinderElement {
         }
         Hexagon hex = new Hexagon(x, y, width, info);
         log(hex.getInfo());
-        hex.setFaceCount(this.style.numberOfFaces);
+        hex.setFaceCount(this.style.faceCount);
         return hex.getHexagon();
     }
 
     public void setStyle(StyleConfig style) {
-        this.style = style;
+        setStyle(style.freeze());
+    }
+
+    public void setStyle(StyleSnapshot style) {
+        setPlan(RenderPlan.compile(style));
+    }
+
+    void setPlan(RenderPlan plan) {
+        this.style = plan.getStyle();
+        this.painter = plan.getFinderPainter(this.finderLocation);
         switch (this.finderLocation) {
         // Top-Left Finder Pattern
         case 0:
@@ -482,6 +550,10 @@ public class FinderElement {
    
 
     public StyleConfig getStyleConfig() {
+        return this.style.toStyleConfig();
+    }
+
+    public StyleSnapshot getStyle() {
         return this.style;
     }
 
@@ -0,0 +1,115 @@
+package io.itpl.qss.render;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Shared rasters of the Finder patterns. A Finder only depends on its shape, colors and width, so in bulk runs
+ * with one style all the codes of the same size reuse the same three (usually one) images.
+ * The location is not part of the key except for the shapes which are not symmetric, therefore a symmetric Finder
+ * is rendered once and drawn on all three corners.
+ * Finders wider than QRCode.MAX_FINDER_IMAGE_WIDTH are painted in place and never cached.
+ * The rasters are evicted in LRU order once their bytes exceed MAX_BYTES, so a run of large sizes only pushes out
+ * the Finders not used lately.
+ */
+final class FinderImageCache {
+    private static final long MAX_BYTES = 32L * 1024 * 1024;
+
+    private static final LinkedHashMap<Key, BufferedImage> IMAGES = new LinkedHashMap<>(16, 0.75f, true);
+    private static long bytes;
+
+    private FinderImageCache() {
+    }
+
+    static synchronized BufferedImage get(Key key) {
+        return IMAGES.get(key);
+    }
+
+    /**
+     * @return the cached image for the key, which is the given one unless another thread was faster.
+     */
+    static synchronized BufferedImage put(Key key, BufferedImage image) {
+        BufferedImage cached = IMAGES.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        long size = sizeOf(image);
+        if (size > MAX_BYTES) {
+            return image;
+        }
+        IMAGES.put(key, image);
+        bytes += size;
+        Iterator<BufferedImage> lru = IMAGES.values().iterator();
+        while (bytes > MAX_BYTES && lru.hasNext()) {
+            bytes -= sizeOf(lru.next());
+            lru.remove();
+        }
+        return image;
+    }
+
+    /**
+     * @return bytes of the raster, 1 per pixel for the indexed canvas, 4 for the RGB one.
+     */
+    private static long sizeOf(BufferedImage image) {
+        DataBuffer data = image.getRaster().getDataBuffer();
+        return (long) data.getSize() * data.getNumBanks() * DataBuffer.getDataTypeSize(data.getDataType()) / 8;
+    }
+
+    static final class Key {
+        private final int finderShape;
+        private final int ballShape;
+        private final int finderColor;
+        private final int ballColor;
+        private final int backgroundColor;
+        private final int finderWidth;
+        private final int innerFrameWidth;
+        private final int ballWidth;
+        private final int faces;
+        private final boolean mirrored;
+        private final int hash;
+
+        Key(int finderShape, int ballShape, Color finderColor, Color ballColor, Color backgroundColor,
+            int finderWidth, int innerFrameWidth, int ballWidth, int faces, boolean mirrored) {
+            this.finderShape = finderShape;
+            this.ballShape = ballShape;
+            this.finderColor = finderColor.getRGB();
+            this.ballColor = ballColor.getRGB();
+            this.backgroundColor = backgroundColor.getRGB();
+            this.finderWidth = finderWidth;
+            this.innerFrameWidth = innerFrameWidth;
+            this.ballWidth = ballWidth;
+            this.faces = faces;
+            this.mirrored = mirrored;
+            int h = finderShape;
+            h = 31 * h + ballShape;
+            h = 31 * h + this.finderColor;
+            h = 31 * h + this.ballColor;
+            h = 31 * h + this.backgroundColor;
+            h = 31 * h + finderWidth;
+            h = 31 * h + innerFrameWidth;
+            h = 31 * h + ballWidth;
+            h = 31 * h + faces;
+            this.hash = 31 * h + (mirrored ? 1 : 0);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return finderShape == k.finderShape && ballShape == k.ballShape
+                    && finderColor == k.finderColor && ballColor == k.ballColor
+                    && backgroundColor == k.backgroundColor && finderWidth == k.finderWidth
+                    && innerFrameWidth == k.innerFrameWidth && ballWidth == k.ballWidth
+                    && faces == k.faces && mirrored == k.mirrored;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package io.itpl.qss.render;
+
+import io.itpl.qss.encoder.ModuleMatrix;
+
+import java.awt.*;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A style compiled for rendering: the style fields the render loops used to test on every module (data shape,
+ * color mode, end type of the linear shapes) and on every Finder (Finder shape) are resolved once into strategy
+ * objects.
+ * <ul>
+ * <li>Each data shape is resolved into a painter with a single loop over the modules. The draw of a module (sprite
+ * blit or direct paint) is picked once per code, not tested per module.
+ * <li>The color mode is resolved into the colors of the even and odd modules (or columns), the same color twice
+ * in the standard mode, so the loops pick a color without testing the mode.
+ * <li>The plans are shared by all the QR Codes of the same style (see compile()), a plan does not depend on the
+ * size or the data of a code. The least recently used plans are dropped beyond MAX_PLANS styles.
+ * </ul>
+ */
+public final class RenderPlan {
+    private static final int MAX_PLANS = 256;
+    private static final LinkedHashMap<StyleSnapshot, RenderPlan> PLANS = new LinkedHashMap<StyleSnapshot, RenderPlan>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<StyleSnapshot, RenderPlan> eldest) {
+            return size() > MAX_PLANS;
+        }
+    };
+
+    private final StyleSnapshot style;
+    private final DataPainter data;
+    private final FinderPainter[] finders;
+
+    private RenderPlan(StyleSnapshot style) {
+        this.style = style;
+        Color[] colors = style.dataColorMode == StyleConfig.DATA_COLOR_MULTICOLOR
+                ? new Color[]{style.dataColorPrimary, style.dataColorSecondary}
+                : new Color[]{style.dataColorPrimary, style.dataColorPrimary};
+        switch (style.dataBlockShape) {
+            case StyleConfig.DATA_SHAPE_SQUARE:
+            case StyleConfig.DATA_SHAPE_CIRCLE:
+            case StyleConfig.DATA_SHAPE_OVAL:
+                this.data = new ParityModules(style.dataBlockShape, colors);
+                break;
+            case StyleConfig.DATA_SHAPE_ROUNDED_BARS:
+                this.data = new RoundedBars(colors);
+                break;
+            case StyleConfig.DATA_SHAPE_ROUNDED_LINEAR:
+                this.data = new LinearBlocks(style.dataBlockShape, 0, style.dataColorPrimary);
+                break;
+            case StyleConfig.DATA_SHAPE_DIAMOND_LINEAR:
+                this.data = new LinearBlocks(style.dataBlockShape, 1, style.dataColorPrimary);
+                break;
+            default:
+                // Unknown shapes draw no data modules.
+                this.data = (code, g, sprites) -> g.setColor(style.dataColorPrimary);
+        }
+        this.finders = new FinderPainter[]{finderPainter(style.topLeftFinderShape),
+                finderPainter(style.topRightFinderShape), finderPainter(style.bottomLeftFinderShape)};
+    }
+
+    /**
+     * @param style style to render with.
+     * @return the plan of the style, compiled on the first use of an equal style.
+     */
+    public static RenderPlan compile(StyleSnapshot style) {
+        synchronized (PLANS) {
+            RenderPlan plan = PLANS.get(style);
+            if (plan == null) {
+                // Cheap, the painters only hold the colors and shapes of the style.
+                plan = new RenderPlan(style);
+                PLANS.put(style, plan);
+            }
+            return plan;
+        }
+    }
+
+    public StyleSnapshot getStyle() {
+        return style;
+    }
+
+    /**
+     * Draw the data modules of the code (the Finder modules excluded) at its origin.
+     */
+    void paintData(QRCode code, Graphics2D g) {
+        data.paint(code, g, ShapeSpriteCache.isCacheable(code.getPitch()));
+    }
+
+    /**
+     * Same as paintData(), without the ShapeSpriteCache at any pitch, i.e. to check the sprites against.
+     */
+    void paintDataDirect(QRCode code, Graphics2D g) {
+        data.paint(code, g, false);
+    }
+
+
+    /**
+     * @param location 0 = Top-Left, 1 = Top-Right, 2 = Bottom-Left.
+     * @return the painter of the Finder at the location, null if its shape is not supported.
+     */
+    FinderPainter getFinderPainter(int location) {
+        return location >= 0 && location < finders.length ? finders[location] : null;
+    }
+
+    private static FinderPainter finderPainter(int shape) {
+        switch (shape) {
+            case StyleConfig.FINDER_SQURE:
+                return FinderElement::paintSquare;
+            case StyleConfig.FINDER_CIRCLE:
+                return FinderElement::paintCircle;
+            case StyleConfig.FINDER_ROUNDED_SQUARE:
+                return FinderElement::paintRoundedCornerSquare;
+            case StyleConfig.FINDER_HEXAGON:
+                return FinderElement::paintHexagon;
+            case StyleConfig.FINDER_OPP_ROUND_CORNERS:
+                return FinderElement::paintOppRoundCornerSquare;
+            default:
+                return null;
+        }
+    }
+
+    interface DataPainter {
+        /**
+         * @param sprites true to blit the shapes from the ShapeSpriteCache, false to paint them.
+         */
+        void paint(QRCode code, Graphics2D g, boolean sprites);
+    }
+
+    /**
+     * Draw a Finder with its top-left corner at the origin of the graphics.
+     */
+    interface FinderPainter {
+        void paint(FinderElement finder, Graphics2D g);
+    }
+
+    /**
+     * Draws one module (or one block of the linear shapes) with its top-left corner at (x,y).
+     */
+    interface ModuleDraw {
+        void draw(Graphics2D g, int block, Color color, int x, int y, int size);
+    }
+
+    /**
+     * @return a draw blitting the sprite of the shape from the ShapeSpriteCache, rendered by the painter on a miss.
+     */
+    private static ModuleDraw spriteDraw(int shape, ShapeSpriteCache.Painter painter) {
+        return (g, block, color, x, y, size) -> ShapeSpriteCache.draw(g, shape, block, size, color, x, y, painter);
+    }
+
+    /**
+     * @return a draw painting the shape straight into the graphics.
+     */
+    private static ModuleDraw directDraw(ShapeSpriteCache.Painter painter) {
+        return (g, block, color, x, y, size) -> {
+            g.setColor(color);
+            painter.paint(g, block, x, y, size);
+        };
+    }
+
+    /**
+     * Square, Circle or Oval modules, in the color of the parity of the module among the Dark modules of its
+     * column. The round shapes are blitted from the ShapeSpriteCache up to its pitch.
+     */
+    private static final class ParityModules implements DataPainter {
+        private final Color[] colors;
+        private final ModuleDraw sprites;
+        private final ModuleDraw shapes;
+
+        ParityModules(int shape, Color[] colors) {
+            this.colors = colors;
+            if (shape == StyleConfig.DATA_SHAPE_SQUARE) {
+                // A rectangle fill is as fast as a blit.
+                this.shapes = directDraw((g, block, x, y, size) -> g.fillRect(x, y, size, size));
+                this.sprites = this.shapes;
+            } else {
+                ShapeSpriteCache.Painter painter = (g, block, x, y, size) -> QRCode.paintDataModule(g, shape, x, y, size);
+                this.shapes = directDraw(painter);
+                this.sprites = spriteDraw(shape, painter);
+            }
+        }
+
+        @Override
+        public void paint(QRCode code, Graphics2D g, boolean sprites) {
+            ModuleDraw draw = sprites ? this.sprites : this.shapes;
+            ModuleMatrix modules = code.getModuleMatrix();
+            int width = modules.getWidth();
+            int pitch = code.getPitch();
+            Rectangle clip = g.getClipBounds();
+            for (int x = 0; x < width; x++) {
+                int count = 0;
+                int i = x * pitch;
+                for (int y = 0; y < width; y++) {
+                    if (!modules.get(x, y)) {
+                        continue;
+                    }
+                    count++;
+                    int j = y * pitch;
+                    if (code.isFunctionalArea(x, y) || !QRCode.isVisible(clip, j - 1, j + pitch + 1)) {
+                        continue;
+                    }
+                    draw.draw(g, QRCode.BLOCK_ISOLATED, colors[count & 1], i, j, pitch);
+                }
+            }
+        }
+    }
+
+    /**
+     * The vertical runs of Dark modules merged into bars with rounded ends, in the color of the parity of the column.
+     */
+    private static final class RoundedBars implements DataPainter {
+        private final Color[] colors;
+
+        RoundedBars(Color[] colors) {
+            this.colors = colors;
+        }
+
+        @Override
+        public void paint(QRCode code, Graphics2D g, boolean sprites) {
+            ModuleMatrix modules = code.getModuleMatrix();
+            int width = modules.getWidth();
+            int pitch = code.getPitch();
+            int barWidth = Math.round(pitch * 0.80f);
+            Rectangle clip = g.getClipBounds();
+            for (int x = 0; x < width; x++) {
+                g.setColor(colors[x & 1]);
+                int i = x * pitch;
+                int y = 0;
+                while (y < width) {
+                    if (!modules.get(x, y) || code.isFunctionalArea(x, y)) {
+                        y++;
+                        continue;
+                    }
+                    // The bar runs until the next Light module, through the Finder modules as well.
+                    int end = y + 1;
+                    while (end < width && modules.get(x, end)) {
+                        end++;
+                    }
+                    int j = y * pitch;
+                    int height = (end - y) * pitch;
+                    if (QRCode.isVisible(clip, j - 1, j + height + 1)) {
+                        g.fillRoundRect(i, j, barWidth, height, pitch, pitch);
+                    }
+                    y = end;
+                }
+            }
+        }
+    }
+
+    /**
+     * The Dark modules merged into areas by their location type (see DataBlockMatrix), with rounded (0) or
+     * diamond (1) ends. Always in the primary color. Blitted from the ShapeSpriteCache up to its pitch.
+     */
+    private static final class LinearBlocks implements DataPainter {
+        private final Color color;
+        private final ModuleDraw sprites;
+        private final ModuleDraw shapes;
+
+        LinearBlocks(int shape, int endType, Color color) {
+            this.color = color;
+            ShapeSpriteCache.Painter painter = (g, block, x, y, size) -> QRCode.paintEdgeBlock(g, block, endType, x, y, size);
+            this.shapes = directDraw(painter);
+            this.sprites = spriteDraw(shape, painter);
+        }
+
+        @Override
+        public void paint(QRCode code, Graphics2D g, boolean sprites) {
+            ModuleDraw draw = sprites ? this.sprites : this.shapes;
+            g.setColor(color);
+            DataBlockMatrix blocks = code.getDataBlocks();
+            int width = code.getModuleMatrix().getWidth();
+            int size = code.getPitch();
+            Rectangle clip = g.getClipBounds();
+            for (int x = 0; x < width; x++) {
+                int i = x * size;
+                for (int y = 0; y < width; y++) {
+                    int block = blocks.get(x, y);
+                    int j = y * size;
+                    if (block != DataBlockMatrix.BLOCK_NONE && QRCode.isVisible(clip, j - 1, j + size + 1)) {
+                        draw.draw(g, block, color, i, j, size);
+                    }
+                }
+            }
+        }
+    }
+}
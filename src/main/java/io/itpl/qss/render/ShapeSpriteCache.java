@@ -0,0 +1,260 @@
+package io.itpl.qss.render;
+
+import java.awt.*;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pre-rendered rasters of the data module shapes. At a fixed pitch and color each (shape, block type) always
+ * produces the same pixels, so the geometry is rasterised once and the renders blit the cached sprite afterwards.
+ * The sprites are shared by all the renders (and threads); they are never modified after creation.
+ * Once the sprites exceed MAX_BYTES the least recently used ones are evicted. The lookup runs for every module, so
+ * unlike FinderImageCache it is lock free: a sprite records the insertion count (the clock) of its last use, which
+ * only changes when new sprites come in, and the eviction drops the sprites with the oldest one.
+ */
+final class ShapeSpriteCache {
+    /**
+     * Bigger modules are drawn directly, the sprite memory would outweigh the saved rasterisation.
+     */
+    static final int MAX_SPRITE_PITCH = 64;
+    /**
+     * Upper bound of the cached pixel memory.
+     */
+    static final long MAX_BYTES = 32L * 1024 * 1024;
+
+    private static final ConcurrentHashMap<Long, Sprite> SPRITES = new ConcurrentHashMap<>();
+    /**
+     * Number of sprites inserted so far, the time of the LRU order.
+     */
+    private static final AtomicLong clock = new AtomicLong();
+    /**
+     * Guards the insertions and evictions, and bytes.
+     */
+    private static final Object LOCK = new Object();
+    private static long bytes;
+
+    /**
+     * Draws one data block at the given location, where (x,y) is the top-left corner of the module.
+     */
+    interface Painter {
+        void paint(Graphics2D g, int block, int x, int y, int size);
+    }
+
+    /**
+     * Rendered shape with the location of the module's top-left corner inside the image.
+     * Shapes may spread over the neighbour modules (i.e. rounded ends), so the image has one module margin
+     * on the left and right plus one pixel all around.
+     */
+    static final class Sprite {
+        final BufferedImage image;
+        final int originX;
+        final int originY;
+        /**
+         * Opaque pixels of the image, null for antialiased sprites.
+         */
+        final Shape coverage;
+        final long bytes;
+        /**
+         * Value of the clock at the last use.
+         */
+        volatile long lastUsed;
+
+        private Sprite(BufferedImage image, int originX, int originY, Shape coverage) {
+            this.image = image;
+            this.originX = originX;
+            this.originY = originY;
+            this.coverage = coverage;
+            this.bytes = 4L * image.getWidth() * image.getHeight();
+        }
+    }
+
+    private ShapeSpriteCache() {
+    }
+
+    /**
+     * @return true if the blocks of this pitch are served from the cache.
+     */
+    static boolean isCacheable(int size) {
+        return size > 0 && size <= MAX_SPRITE_PITCH;
+    }
+    /**
+     * Blit the cached sprite of (shape, block, size, color) to (x,y), rendering it first if required.
+     * @param g target graphics, the antialias hint of which is part of the key.
+     * @param shape StyleConfig.DATA_SHAPE_* of the module.
+     * @param block QRCode.BLOCK_* type of the module.
+     * @param size module pitch in pixels.
+     * @param color color of the module.
+     * @param painter draws the shape when the sprite is not cached yet.
+     */
+    static void draw(Graphics2D g, int shape, int block, int size, Color color, int x, int y, Painter painter) {
+        boolean antialias = RenderingHints.VALUE_ANTIALIAS_ON.equals(g.getRenderingHint(RenderingHints.KEY_ANTIALIASING));
+        long key = ((long) color.getRGB() & 0xFFFFFFFFL)
+                | ((long) size << 32)
+                | ((long) block << 48)
+                | ((long) shape << 56)
+                | (antialias ? 1L << 63 : 0L);
+        Sprite sprite = SPRITES.get(key);
+        if (sprite == null) {
+            sprite = put(key, render(shape, block, size, color, antialias, painter));
+        } else {
+            long now = clock.get();
+            // Written once per insertion at most, the hits of a warm cache do not write.
+            if (sprite.lastUsed != now) {
+                sprite.lastUsed = now;
+            }
+        }
+        if (sprite.coverage != null && g.getDeviceConfiguration().getColorModel() instanceof IndexColorModel) {
+            // Blitting ARGB onto an indexed canvas (see QRUtils.createCanvas()) is slow, fill the same pixels instead.
+            g.setColor(color);
+            g.translate(x - sprite.originX, y - sprite.originY);
+            g.fill(sprite.coverage);
+            g.translate(sprite.originX - x, sprite.originY - y);
+            return;
+        }
+        g.drawImage(sprite.image, x - sprite.originX, y - sprite.originY, null);
+    }
+
+    /**
+     * @return the cached sprite of the key, which is the given one unless another thread was faster.
+     */
+    private static Sprite put(Long key, Sprite sprite) {
+        synchronized (LOCK) {
+            Sprite cached = SPRITES.putIfAbsent(key, sprite);
+            if (cached != null) {
+                return cached;
+            }
+            sprite.lastUsed = clock.incrementAndGet();
+            bytes += sprite.bytes;
+            if (bytes > MAX_BYTES) {
+                evict();
+            }
+            return sprite;
+        }
+    }
+
+    /**
+     * Drop the least recently used sprites until the cache fits in MAX_BYTES.
+     */
+    private static void evict() {
+        // Sorted on a snapshot of the use times, the renders keep updating them meanwhile.
+        List<Use> lru = new ArrayList<>(SPRITES.size());
+        for (Map.Entry<Long, Sprite> entry : SPRITES.entrySet()) {
+            lru.add(new Use(entry.getKey(), entry.getValue()));
+        }
+        lru.sort(Comparator.comparingLong(use -> use.lastUsed));
+        for (int i = 0; i < lru.size() && bytes > MAX_BYTES; i++) {
+            Use eldest = lru.get(i);
+            if (SPRITES.remove(eldest.key, eldest.sprite)) {
+                bytes -= eldest.sprite.bytes;
+            }
+        }
+    }
+
+    private static final class Use {
+        final Long key;
+        final Sprite sprite;
+        final long lastUsed;
+
+        Use(Long key, Sprite sprite) {
+            this.key = key;
+            this.sprite = sprite;
+            this.lastUsed = sprite.lastUsed;
+        }
+    }
+
+    /**
+     * Drop all the sprites.
+     */
+    static void clear() {
+        synchronized (LOCK) {
+            SPRITES.clear();
+            bytes = 0;
+        }
+    }
+
+    /**
+     * @return pixel bytes of the cached sprites.
+     */
+    static long getSize() {
+        synchronized (LOCK) {
+            return bytes;
+        }
+    }
+
+    private static Sprite render(int shape, int block, int size, Color color, boolean antialias, Painter painter) {
+        int originX = size + 1;
+        int originY = 1;
+        BufferedImage image = new BufferedImage(3 * size + 2, size + 2, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        if (antialias) {
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        }
+        g.setColor(color);
+        painter.paint(g, block, originX, originY, size);
+        g.dispose();
+        return new Sprite(image, originX, originY, antialias ? null : coverageOf(image));
+    }
+
+    /**
+     * @return the opaque pixels of the sprite as rectangles, with the rows of the same runs merged.
+     * Filling integer rectangles gives the same pixels at any location, unlike the shapes they come from.
+     */
+    private static Shape coverageOf(BufferedImage image) {
+        Path2D.Float coverage = new Path2D.Float();
+        int width = image.getWidth();
+        int[] row = new int[width];
+        int[] runs = new int[width + 1];
+        int[] previous = new int[width + 1];
+        int count = 0;
+        int previousCount = 0;
+        int top = 0;
+        for (int y = 0; y <= image.getHeight(); y++) {
+            count = 0;
+            if (y < image.getHeight()) {
+                image.getRGB(0, y, width, 1, row, 0, width);
+                for (int x = 0; x < width; ) {
+                    while (x < width && row[x] >>> 24 == 0) {
+                        x++;
+                    }
+                    if (x < width) {
+                        runs[count++] = x;
+                        while (x < width && row[x] >>> 24 != 0) {
+                            x++;
+                        }
+                        runs[count++] = x;
+                    }
+                }
+            }
+            if (!sameRuns(runs, count, previous, previousCount)) {
+                for (int i = 0; i < previousCount; i += 2) {
+                    coverage.append(new Rectangle(previous[i], top, previous[i + 1] - previous[i], y - top), false);
+                }
+                int[] swap = previous;
+                previous = runs;
+                runs = swap;
+                previousCount = count;
+                top = y;
+            }
+        }
+        return coverage;
+    }
+
+    private static boolean sameRuns(int[] runs, int count, int[] other, int otherCount) {
+        if (count != otherCount) {
+            return false;
+        }
+        for (int i = 0; i < count; i++) {
+            if (runs[i] != other[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -63,9 +63,15 @@ public class StyleConfig {
      */
     public final static int FINDER_HEXAGON = 3;
     /**
-     * No's of faces to be counted while drawing the custom hexagone shape.
+     * Default faceCount of the styles created afterwards, the renderers read the faceCount of their style.
+     * @deprecated set the faceCount of the style instead.
      * */
+    @Deprecated
     public static int numberOfFaces = 6;
+    /**
+     * No's of faces to be counted while drawing the custom hexagone shape.
+     * */
+    public int faceCount = numberOfFaces;
     /**
      * Finder style to draw Squre wherein two opposite corners are Curved and Other two are Standard.
      */
@@ -129,6 +135,21 @@ public class StyleConfig {
      */
     public float logoBkgColorTransparency = 0.5f;
 
+    /**
+     * @return the colors the QR code is drawn with as of now, see StyleSnapshot.getPalette().
+     */
+    public Color[] getPalette() {
+        return freeze().getPalette();
+    }
+
+    /**
+     * @return an immutable copy of this style, which the renderers and caches share (see StyleSnapshot).
+     * Later changes of this style do not affect it.
+     */
+    public StyleSnapshot freeze() {
+        return StyleSnapshot.builder(this).build();
+    }
+
     private StyleConfig() {
         
     }
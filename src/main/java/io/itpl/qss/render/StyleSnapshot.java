@@ -0,0 +1,328 @@
+package io.itpl.qss.render;
+
+import java.awt.*;
+
+/**
+ * Immutable copy of a StyleConfig, as used by the renderers. A snapshot can be shared by any number of threads
+ * and QR Codes, and carries a 64-bit fingerprint computed once, so the caches compare and hash a style without
+ * walking its fields.
+ * <ul>
+ * <li>Taken from a StyleConfig with StyleConfig.freeze(), or built with builder().
+ * <li>The fields have the meaning and constants of the StyleConfig fields of the same name.
+ * <li>faceCount replaces the static StyleConfig.numberOfFaces, each style has its own.
+ * </ul>
+ */
+public final class StyleSnapshot {
+    public final Color backgroundColor;
+    public final Color dataColorPrimary;
+    public final Color dataColorSecondary;
+    public final int dataColorMode;
+    public final Color logoBackgroundColor;
+    public final Color finderColor;
+    public final Color finderBallColor;
+    public final boolean bDrawLogoBackground;
+    public final int finderBallShape;
+    public final int topLeftFinderShape;
+    public final int topRightFinderShape;
+    public final int bottomLeftFinderShape;
+    public final int dataBlockShape;
+    public final float logoBkgColorTransparency;
+    /**
+     * No's of faces of the FINDER_HEXAGON shape.
+     */
+    public final int faceCount;
+
+    private final long fingerprint;
+    private final Color[] palette;
+
+    private StyleSnapshot(Builder builder) {
+        this.backgroundColor = builder.backgroundColor;
+        this.dataColorPrimary = builder.dataColorPrimary;
+        this.dataColorSecondary = builder.dataColorSecondary;
+        this.dataColorMode = builder.dataColorMode;
+        this.logoBackgroundColor = builder.logoBackgroundColor;
+        this.finderColor = builder.finderColor;
+        this.finderBallColor = builder.finderBallColor;
+        this.bDrawLogoBackground = builder.bDrawLogoBackground;
+        this.finderBallShape = builder.finderBallShape;
+        this.topLeftFinderShape = builder.topLeftFinderShape;
+        this.topRightFinderShape = builder.topRightFinderShape;
+        this.bottomLeftFinderShape = builder.bottomLeftFinderShape;
+        this.dataBlockShape = builder.dataBlockShape;
+        this.logoBkgColorTransparency = builder.logoBkgColorTransparency;
+        this.faceCount = builder.faceCount;
+        this.palette = dataColorMode == StyleConfig.DATA_COLOR_MULTICOLOR
+                ? new Color[]{backgroundColor, dataColorPrimary, dataColorSecondary, finderColor, finderBallColor}
+                : new Color[]{backgroundColor, dataColorPrimary, finderColor, finderBallColor};
+        long h = FNV_OFFSET;
+        h = mix(h, backgroundColor);
+        h = mix(h, dataColorPrimary);
+        h = mix(h, dataColorSecondary);
+        h = mix(h, dataColorMode);
+        h = mix(h, logoBackgroundColor);
+        h = mix(h, finderColor);
+        h = mix(h, finderBallColor);
+        h = mix(h, bDrawLogoBackground ? 1 : 0);
+        h = mix(h, finderBallShape);
+        h = mix(h, topLeftFinderShape);
+        h = mix(h, topRightFinderShape);
+        h = mix(h, bottomLeftFinderShape);
+        h = mix(h, dataBlockShape);
+        h = mix(h, Float.floatToIntBits(logoBkgColorTransparency));
+        h = mix(h, faceCount);
+        // Spread the bits (MurmurHash3 finalizer), the low bits are used as the hash code.
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        this.fingerprint = h ^ (h >>> 33);
+    }
+
+    /**
+     * @return a builder starting from the default style (see StyleConfig.getDefaultStyleConfig()).
+     */
+    public static Builder builder() {
+        return new Builder(StyleConfig.getDefaultStyleConfig());
+    }
+
+    /**
+     * @param style style to start from.
+     * @return a builder starting from the given style.
+     */
+    public static Builder builder(StyleConfig style) {
+        return new Builder(style);
+    }
+
+    /**
+     * @return a builder starting from this style, to derive another one.
+     */
+    public Builder toBuilder() {
+        return new Builder(toStyleConfig());
+    }
+
+    /**
+     * @return a mutable copy of this style.
+     */
+    public StyleConfig toStyleConfig() {
+        StyleConfig style = StyleConfig.getDefaultStyleConfig();
+        style.backgroundColor = backgroundColor;
+        style.dataColorPrimary = dataColorPrimary;
+        style.dataColorSecondary = dataColorSecondary;
+        style.dataColorMode = dataColorMode;
+        style.logoBackgroundColor = logoBackgroundColor;
+        style.finderColor = finderColor;
+        style.finderBallColor = finderBallColor;
+        style.bDrawLogoBackground = bDrawLogoBackground;
+        style.finderBallShape = finderBallShape;
+        style.topLeftFinderShape = topLeftFinderShape;
+        style.topRightFinderShape = topRightFinderShape;
+        style.bottomLeftFinderShape = bottomLeftFinderShape;
+        style.dataBlockShape = dataBlockShape;
+        style.logoBkgColorTransparency = logoBkgColorTransparency;
+        style.faceCount = faceCount;
+        return style;
+    }
+
+    /**
+     * @return 64-bit hash of all the fields. Equal styles have equal fingerprints, different styles almost
+     * always different ones; use equals() where a collision must not matter.
+     */
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * @return the colors the QR code is drawn with (background first), without the logo colors.
+     * Used to pick an indexed canvas, see QRUtils.createCanvas().
+     */
+    public Color[] getPalette() {
+        return palette.clone();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof StyleSnapshot)) return false;
+        StyleSnapshot s = (StyleSnapshot) o;
+        return fingerprint == s.fingerprint
+                && equal(backgroundColor, s.backgroundColor) && equal(dataColorPrimary, s.dataColorPrimary)
+                && equal(dataColorSecondary, s.dataColorSecondary) && dataColorMode == s.dataColorMode
+                && equal(logoBackgroundColor, s.logoBackgroundColor) && equal(finderColor, s.finderColor)
+                && equal(finderBallColor, s.finderBallColor) && bDrawLogoBackground == s.bDrawLogoBackground
+                && finderBallShape == s.finderBallShape && topLeftFinderShape == s.topLeftFinderShape
+                && topRightFinderShape == s.topRightFinderShape && bottomLeftFinderShape == s.bottomLeftFinderShape
+                && dataBlockShape == s.dataBlockShape
+                && Float.floatToIntBits(logoBkgColorTransparency) == Float.floatToIntBits(s.logoBkgColorTransparency)
+                && faceCount == s.faceCount;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) fingerprint;
+    }
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static long mix(long h, int value) {
+        return (h ^ value) * FNV_PRIME;
+    }
+
+    private static long mix(long h, Color color) {
+        // Flagged, so null can not collide with a color (getRGB() includes the alpha).
+        h = mix(h, color != null ? 1 : 0);
+        return mix(h, color != null ? color.getRGB() : 0);
+    }
+
+    private static boolean equal(Color a, Color b) {
+        return a == null ? b == null : b != null && a.getRGB() == b.getRGB();
+    }
+
+    /**
+     * Mutable builder of a StyleSnapshot, not thread safe. build() can be called any number of times.
+     */
+    public static final class Builder {
+        private Color backgroundColor;
+        private Color dataColorPrimary;
+        private Color dataColorSecondary;
+        private int dataColorMode;
+        private Color logoBackgroundColor;
+        private Color finderColor;
+        private Color finderBallColor;
+        private boolean bDrawLogoBackground;
+        private int finderBallShape;
+        private int topLeftFinderShape;
+        private int topRightFinderShape;
+        private int bottomLeftFinderShape;
+        private int dataBlockShape;
+        private float logoBkgColorTransparency;
+        private int faceCount;
+
+        private Builder(StyleConfig style) {
+            this.backgroundColor = style.backgroundColor;
+            this.dataColorPrimary = style.dataColorPrimary;
+            this.dataColorSecondary = style.dataColorSecondary;
+            this.dataColorMode = style.dataColorMode;
+            this.logoBackgroundColor = style.logoBackgroundColor;
+            this.finderColor = style.finderColor;
+            this.finderBallColor = style.finderBallColor;
+            this.bDrawLogoBackground = style.bDrawLogoBackground;
+            this.finderBallShape = style.finderBallShape;
+            this.topLeftFinderShape = style.topLeftFinderShape;
+            this.topRightFinderShape = style.topRightFinderShape;
+            this.bottomLeftFinderShape = style.bottomLeftFinderShape;
+            this.dataBlockShape = style.dataBlockShape;
+            this.logoBkgColorTransparency = style.logoBkgColorTransparency;
+            this.faceCount = style.faceCount;
+        }
+
+        public Builder backgroundColor(Color color) {
+            this.backgroundColor = color;
+            return this;
+        }
+
+        public Builder dataColorPrimary(Color color) {
+            this.dataColorPrimary = color;
+            return this;
+        }
+
+        public Builder dataColorSecondary(Color color) {
+            this.dataColorSecondary = color;
+            return this;
+        }
+
+        /**
+         * @param mode StyleConfig.DATA_COLOR_STANDARD or StyleConfig.DATA_COLOR_MULTICOLOR.
+         */
+        public Builder dataColorMode(int mode) {
+            this.dataColorMode = mode;
+            return this;
+        }
+
+        public Builder logoBackgroundColor(Color color) {
+            this.logoBackgroundColor = color;
+            return this;
+        }
+
+        public Builder finderColor(Color color) {
+            this.finderColor = color;
+            return this;
+        }
+
+        public Builder finderBallColor(Color color) {
+            this.finderBallColor = color;
+            return this;
+        }
+
+        public Builder drawLogoBackground(boolean draw) {
+            this.bDrawLogoBackground = draw;
+            return this;
+        }
+
+        /**
+         * @param shape StyleConfig.BALL_*.
+         */
+        public Builder finderBallShape(int shape) {
+            this.finderBallShape = shape;
+            return this;
+        }
+
+        /**
+         * Set the shape of all three Finders.
+         * @param shape StyleConfig.FINDER_*.
+         */
+        public Builder finderShape(int shape) {
+            this.topLeftFinderShape = shape;
+            this.topRightFinderShape = shape;
+            this.bottomLeftFinderShape = shape;
+            return this;
+        }
+
+        public Builder topLeftFinderShape(int shape) {
+            this.topLeftFinderShape = shape;
+            return this;
+        }
+
+        public Builder topRightFinderShape(int shape) {
+            this.topRightFinderShape = shape;
+            return this;
+        }
+
+        public Builder bottomLeftFinderShape(int shape) {
+            this.bottomLeftFinderShape = shape;
+            return this;
+        }
+
+        /**
+         * @param shape StyleConfig.DATA_SHAPE_*.
+         */
+        public Builder dataBlockShape(int shape) {
+            this.dataBlockShape = shape;
+            return this;
+        }
+
+        public Builder logoBkgColorTransparency(float transparency) {
+            this.logoBkgColorTransparency = transparency;
+            return this;
+        }
+
+        /**
+         * @param faces No's of faces of the FINDER_HEXAGON shape, at least 3.
+         * @throws IllegalArgumentException in case of less than 3 faces.
+         */
+        public Builder faceCount(int faces) {
+            if (faces < 3) {
+                throw new IllegalArgumentException("Invalid face count:" + faces);
+            }
+            this.faceCount = faces;
+            return this;
+        }
+
+        /**
+         * @return the immutable style.
+         */
+        public StyleSnapshot build() {
+            return new StyleSnapshot(this);
+        }
+    }
+}
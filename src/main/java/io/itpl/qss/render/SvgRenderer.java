@@ -0,0 +1,519 @@
+package io.itpl.qss.render;
+
+import io.itpl.qss.encoder.FunctionPatternMask;
+import io.itpl.qss.encoder.ModuleMatrix;
+import io.itpl.qss.exception.InvalidQRConfigException;
+
+import java.awt.*;
+import java.io.IOException;
+import java.math.BigDecimal;
+
+/**
+ * Renders the QR Code as SVG straight from the module matrix, with the same shapes and colors as QRCode.toImage().
+ * The drawing uses one unit per module (the pixel size is only set as width/height of the document), so the output
+ * size and the render time depend on the module count only.
+ * <ul>
+ * <li>All the data modules of one color go into a single path; square modules are merged into horizontal runs,
+ * the mid blocks of the linear shapes likewise.
+ * <li>Finder frames are one even-odd path each (the hole shows the background), the balls another path.
+ * <li>The logo is referenced with an image element, either linked (URL) or embedded (data URI).
+ * </ul>
+ */
+public class SvgRenderer {
+    private static final int COLOR_NONE = -1;
+    private static final int COLOR_PRIMARY = 0;
+    private static final int COLOR_SECONDARY = 1;
+
+    private final ModuleMatrix modules;
+    private final FunctionPatternMask functionPatterns;
+    private final StyleSnapshot style;
+    private String logoHref;
+    private float logoWidth;
+    private float logoHeight;
+
+    /**
+     * @param modules encoded module matrix.
+     * @param style StyleConfig to define the Visual appearance of the QR Code.
+     */
+    public SvgRenderer(ModuleMatrix modules, StyleConfig style) {
+        this(modules, style.freeze());
+    }
+
+    /**
+     * @param modules encoded module matrix.
+     * @param style frozen style (see StyleConfig.freeze()).
+     */
+    public SvgRenderer(ModuleMatrix modules, StyleSnapshot style) {
+        this.modules = modules;
+        this.functionPatterns = FunctionPatternMask.forMatrix(modules);
+        this.style = style;
+    }
+
+    /**
+     * Place a logo in the center of the QR Code, on top of the logo background if StyleConfig.bDrawLogoBackground.
+     * @param href URL or data URI of the logo image.
+     * @param width width of the logo in modules.
+     * @param height height of the logo in modules.
+     */
+    public void setLogo(String href, float width, float height) {
+        this.logoHref = href;
+        this.logoWidth = width;
+        this.logoHeight = height;
+    }
+
+    /**
+     * @param pixelSize width and height of the SVG document, including the quiet zone.
+     * @param quietZone margin on each side, in modules.
+     * @return the SVG document.
+     * @throws InvalidQRConfigException in case the Finder shape is not supported.
+     */
+    public String toSvg(int pixelSize, float quietZone) throws InvalidQRConfigException {
+        StringBuilder svg = new StringBuilder(1024 + modules.getWidth() * modules.getWidth() * 4);
+        try {
+            write(svg, pixelSize, quietZone);
+        } catch (IOException e) {
+            // StringBuilder does not throw.
+            throw new IllegalStateException(e);
+        }
+        return svg.toString();
+    }
+
+    /**
+     * Write the SVG document.
+     * @param out destination, i.e. a Writer or StringBuilder.
+     * @param pixelSize width and height of the SVG document, including the quiet zone.
+     * @param quietZone margin on each side, in modules.
+     * @throws IOException in case of failure of writing to the destination.
+     * @throws InvalidQRConfigException in case the Finder shape is not supported.
+     */
+    public void write(Appendable out, int pixelSize, float quietZone) throws IOException, InvalidQRConfigException {
+        int width = modules.getWidth();
+        String origin = num(-quietZone);
+        String total = num(width + 2 * quietZone);
+        out.append("<svg xmlns=\"http://www.w3.org/2000/svg\" xmlns:xlink=\"http://www.w3.org/1999/xlink\" width=\"")
+                .append(Integer.toString(pixelSize)).append("\" height=\"").append(Integer.toString(pixelSize))
+                .append("\" viewBox=\"").append(origin).append(' ').append(origin).append(' ')
+                .append(total).append(' ').append(total).append("\">\n");
+        out.append("<rect x=\"").append(origin).append("\" y=\"").append(origin).append("\" width=\"").append(total)
+                .append("\" height=\"").append(total).append('"').append(fill(style.backgroundColor)).append("/>\n");
+
+        writeFinder(out, style.topLeftFinderShape, 0, 0, 0);
+        writeFinder(out, style.topRightFinderShape, 1, width - FinderElement.FINDER_SIZE, 0);
+        writeFinder(out, style.bottomLeftFinderShape, 2, 0, width - FinderElement.FINDER_SIZE);
+
+        int[] colors = getDataColors();
+        writeData(out, colors, COLOR_PRIMARY, style.dataColorPrimary);
+        if (style.dataColorMode == StyleConfig.DATA_COLOR_MULTICOLOR) {
+            writeData(out, colors, COLOR_SECONDARY, style.dataColorSecondary);
+        }
+
+        if (logoHref != null) {
+            writeLogo(out, width);
+        }
+        out.append("</svg>\n");
+    }
+
+    /**
+     * @return COLOR_* of each module (row by row), following the odd-even rules of QRCode.toImage().
+     */
+    private int[] getDataColors() {
+        int width = modules.getWidth();
+        int[] colors = new int[width * width];
+        boolean multicolor = style.dataColorMode == StyleConfig.DATA_COLOR_MULTICOLOR;
+        int shape = style.dataBlockShape;
+        for (int x = 0; x < width; x++) {
+            // The modules are counted down the column, Finder modules included.
+            int darkCount = 0;
+            for (int y = 0; y < width; y++) {
+                int color = COLOR_NONE;
+                if (modules.get(x, y)) {
+                    darkCount++;
+                    if (!functionPatterns.isFinder(x, y)) {
+                        if (!multicolor || shape == StyleConfig.DATA_SHAPE_ROUNDED_LINEAR
+                                || shape == StyleConfig.DATA_SHAPE_DIAMOND_LINEAR) {
+                            color = COLOR_PRIMARY;
+                        } else if (shape == StyleConfig.DATA_SHAPE_ROUNDED_BARS) {
+                            color = x % 2 == 0 ? COLOR_PRIMARY : COLOR_SECONDARY;
+                        } else {
+                            color = darkCount % 2 == 0 ? COLOR_PRIMARY : COLOR_SECONDARY;
+                        }
+                    }
+                }
+                colors[y * width + x] = color;
+            }
+        }
+        return colors;
+    }
+
+    private void writeData(Appendable out, int[] colors, int color, Color fillColor) throws IOException {
+        StringBuilder d = new StringBuilder();
+        switch (style.dataBlockShape) {
+            case StyleConfig.DATA_SHAPE_ROUNDED_BARS:
+                appendBars(d, colors, color);
+                break;
+            case StyleConfig.DATA_SHAPE_ROUNDED_LINEAR:
+            case StyleConfig.DATA_SHAPE_DIAMOND_LINEAR:
+                // The linear shapes are drawn in dataColorPrimary only.
+                if (color == COLOR_PRIMARY) {
+                    appendLinear(d, style.dataBlockShape == StyleConfig.DATA_SHAPE_DIAMOND_LINEAR ? 1 : 0);
+                }
+                break;
+            case StyleConfig.DATA_SHAPE_CIRCLE:
+            case StyleConfig.DATA_SHAPE_OVAL:
+                appendDots(d, colors, color, style.dataBlockShape);
+                break;
+            default:
+                appendSquares(d, colors, color);
+        }
+        if (d.length() > 0) {
+            out.append("<path d=\"").append(d).append('"').append(fill(fillColor)).append("/>\n");
+        }
+    }
+
+    /**
+     * Square modules, merged into horizontal runs of the same color.
+     */
+    private void appendSquares(StringBuilder d, int[] colors, int color) {
+        int width = modules.getWidth();
+        for (int y = 0; y < width; y++) {
+            int x = 0;
+            while (x < width) {
+                if (colors[y * width + x] != color) {
+                    x++;
+                    continue;
+                }
+                int start = x;
+                while (x < width && colors[y * width + x] == color) {
+                    x++;
+                }
+                d.append('M').append(start).append(' ').append(y)
+                        .append('h').append(x - start).append("v1h").append(start - x).append('z');
+            }
+        }
+    }
+
+    private void appendDots(StringBuilder d, int[] colors, int color, int shape) {
+        int width = modules.getWidth();
+        for (int y = 0; y < width; y++) {
+            for (int x = 0; x < width; x++) {
+                if (colors[y * width + x] != color) {
+                    continue;
+                }
+                if (shape == StyleConfig.DATA_SHAPE_OVAL) {
+                    // fillOval(i + size/3, j, size - size/3, size)
+                    appendEllipse(d, x + 2 / 3d, y + 0.5, 1 / 3d, 0.5);
+                } else {
+                    appendEllipse(d, x + 0.5, y + 0.5, 0.5, 0.5);
+                }
+            }
+        }
+    }
+
+    /**
+     * Vertical bars (80% of the module width) over the runs of Dark modules, starting at a data module.
+     */
+    private void appendBars(StringBuilder d, int[] colors, int color) {
+        int width = modules.getWidth();
+        for (int x = 0; x < width; x++) {
+            int y = 0;
+            while (y < width) {
+                if (colors[y * width + x] == COLOR_NONE) {
+                    y++;
+                    continue;
+                }
+                // As QRCode, the run continues through every Dark module below.
+                int end = y + 1;
+                while (end < width && modules.get(x, end)) {
+                    end++;
+                }
+                if (colors[y * width + x] == color) {
+                    // fillRoundRect(i, j, 0.8 * size, height, size, size), the arc is limited to the width.
+                    appendRoundRect(d, x, y, 0.8, end - y, 0.4, 0.5);
+                }
+                y = end;
+            }
+        }
+    }
+
+    /**
+     * Linear shapes, one outline per block location (see QRCode.paintEdgeBlock()) clipped to its module.
+     * @param endType 0 for rounded ends, 1 for diamond ends.
+     */
+    private void appendLinear(StringBuilder d, int endType) {
+        DataBlockMatrix blocks = DataBlockMatrix.classify(modules, functionPatterns.getFinderMask());
+        int width = modules.getWidth();
+        for (int y = 0; y < width; y++) {
+            int x = 0;
+            while (x < width) {
+                int block = blocks.get(x, y);
+                if (block == QRCode.BLOCK_MID) {
+                    int start = x;
+                    while (x < width && blocks.get(x, y) == QRCode.BLOCK_MID) {
+                        x++;
+                    }
+                    d.append('M').append(start).append(' ').append(y)
+                            .append('h').append(x - start).append("v1h").append(start - x).append('z');
+                    continue;
+                }
+                if (block != DataBlockMatrix.BLOCK_NONE) {
+                    appendEdgeBlock(d, block, endType, x, y);
+                }
+                x++;
+            }
+        }
+    }
+
+    private static void appendEdgeBlock(StringBuilder d, int block, int endType, int x, int y) {
+        switch (block) {
+            case QRCode.BLOCK_ISOLATED:
+                if (endType == 0) {
+                    appendEllipse(d, x + 0.5, y + 0.5, 0.5, 0.5);
+                } else {
+                    appendDiamond(d, x, y);
+                }
+                break;
+            case QRCode.BLOCK_CORNER_TOP_LEFT:
+                moveTo(d, x, y + 0.5);
+                d.append("a.5 .5 0 0 1 .5-.5h.5v1h-1z");
+                break;
+            case QRCode.BLOCK_CORNER_TOP_RIGHT:
+                moveTo(d, x, y);
+                d.append("h.5a.5 .5 0 0 1 .5 .5v.5h-1z");
+                break;
+            case QRCode.BLOCK_CORNER_BOTTOM_RIGHT:
+                moveTo(d, x, y);
+                d.append("h1v.5a.5 .5 0 0 1-.5 .5h-.5z");
+                break;
+            case QRCode.BLOCK_CORNER_BOTTOM_LEFT:
+                moveTo(d, x, y);
+                d.append("h1v1h-.5a.5 .5 0 0 1-.5-.5z");
+                break;
+            case QRCode.BLOCK_LEFT_END:
+                if (endType == 0) {
+                    // Left half of the oval spanning this and the next module.
+                    moveTo(d, x + 1, y);
+                    d.append("v1a1 .5 0 0 1-1-.5a1 .5 0 0 1 1-.5z");
+                } else {
+                    appendRect(d, x + 0.5, y, 0.5, 1);
+                    appendDiamond(d, x, y);
+                }
+                break;
+            case QRCode.BLOCK_RIGHT_END:
+                if (endType == 0) {
+                    moveTo(d, x, y);
+                    d.append("a1 .5 0 0 1 1 .5a1 .5 0 0 1-1 .5z");
+                } else {
+                    appendRect(d, x, y, 0.5, 1);
+                    appendDiamond(d, x, y);
+                }
+                break;
+            case QRCode.BLOCK_TOP_END:
+                if (endType == 0) {
+                    moveTo(d, x, y + 0.5);
+                    d.append("a.5 .5 0 0 1 1 0v.5h-1z");
+                } else {
+                    appendRect(d, x, y + 0.5, 1, 0.5);
+                    appendDiamond(d, x, y);
+                }
+                break;
+            case QRCode.BLOCK_BOTTOM_END:
+                if (endType == 0) {
+                    moveTo(d, x, y);
+                    d.append("h1v.5a.5 .5 0 0 1-1 0z");
+                } else {
+                    appendRect(d, x, y, 1, 0.5);
+                    appendDiamond(d, x, y);
+                }
+                break;
+        }
+    }
+
+    /**
+     * Finder pattern of 7 modules at (x,y): frame (7 minus 5) in finderColor and ball (3) in finderBallColor,
+     * with the same geometry as the FinderElement shapes.
+     */
+    private void writeFinder(Appendable out, int shape, int location, int x, int y) throws IOException, InvalidQRConfigException {
+        StringBuilder frame = new StringBuilder();
+        StringBuilder ball = new StringBuilder();
+        switch (shape) {
+            case StyleConfig.FINDER_SQURE:
+                appendRect(frame, x, y, 7, 7);
+                appendRect(frame, x + 1, y + 1, 5, 5);
+                appendRect(ball, x + 2, y + 2, 3, 3);
+                break;
+            case StyleConfig.FINDER_ROUNDED_SQUARE:
+                // fillRoundRect(.., width / 3, width / 3)
+                appendRoundRect(frame, x, y, 7, 7, 7 / 6d, 7 / 6d);
+                appendRoundRect(frame, x + 1, y + 1, 5, 5, 5 / 6d, 5 / 6d);
+                if (style.finderBallShape == StyleConfig.BALL_CIRCLE) {
+                    appendEllipse(ball, x + 3.5, y + 3.5, 1.5, 1.5);
+                } else {
+                    appendRoundRect(ball, x + 2, y + 2, 3, 3, 0.5, 0.5);
+                }
+                break;
+            case StyleConfig.FINDER_CIRCLE:
+                appendEllipse(frame, x + 3.5, y + 3.5, 3.5, 3.5);
+                appendEllipse(frame, x + 3.5, y + 3.5, 2.5, 2.5);
+                appendEllipse(ball, x + 3.5, y + 3.5, 1.5, 1.5);
+                break;
+            case StyleConfig.FINDER_HEXAGON:
+                appendPolygon(frame, x + 3.5, y + 3.5, 3.5, style.faceCount);
+                appendPolygon(frame, x + 3.5, y + 3.5, 2.5, style.faceCount);
+                appendPolygon(ball, x + 3.5, y + 3.5, 1.5, style.faceCount);
+                break;
+            case StyleConfig.FINDER_OPP_ROUND_CORNERS:
+                // fillRoundRect(.., width / 2, width / 2) with two square corners, mirrored on the Top-Left.
+                appendOppRoundRect(frame, location, x, y, 7);
+                appendOppRoundRect(frame, location, x + 1, y + 1, 5);
+                appendOppRoundRect(ball, location, x + 2, y + 2, 3);
+                break;
+            default:
+                throw new InvalidQRConfigException("Finder Style not found:" + shape);
+        }
+        out.append("<path d=\"").append(frame).append("\" fill-rule=\"evenodd\"").append(fill(style.finderColor)).append("/>\n");
+        out.append("<path d=\"").append(ball).append('"').append(fill(style.finderBallColor)).append("/>\n");
+    }
+
+    private static void appendOppRoundRect(StringBuilder d, int location, double x, double y, double w) {
+        double r = w / 4;
+        boolean topLeft = location == 0;
+        appendRoundRect(d, x, y, w, w, r, r, !topLeft, topLeft, !topLeft, topLeft);
+    }
+
+    /**
+     * Same layout as QRUtils.getOverlayImage(): logo centered, on a round rect 20% bigger than the logo.
+     */
+    private void writeLogo(Appendable out, int width) throws IOException {
+        double x = (width - logoWidth) / 2d;
+        double y = (width - logoHeight) / 2d;
+        if (style.bDrawLogoBackground && style.logoBackgroundColor != null) {
+            double bw = logoWidth * 1.2;
+            double bh = logoHeight * 1.2;
+            out.append("<rect x=\"").append(num(x - logoWidth * 0.1)).append("\" y=\"").append(num(y - logoHeight * 0.1))
+                    .append("\" width=\"").append(num(bw)).append("\" height=\"").append(num(bh))
+                    .append("\" rx=\"").append(num(bw / 4)).append("\" ry=\"").append(num(bh / 4)).append('"')
+                    .append(fill(style.logoBackgroundColor)).append("/>\n");
+        }
+        out.append("<image x=\"").append(num(x)).append("\" y=\"").append(num(y))
+                .append("\" width=\"").append(num(logoWidth)).append("\" height=\"").append(num(logoHeight))
+                .append("\" xlink:href=\"");
+        escape(out, logoHref);
+        out.append("\"/>\n");
+    }
+
+    private static void moveTo(StringBuilder d, double x, double y) {
+        d.append('M').append(num(x)).append(' ').append(num(y));
+    }
+
+    private static void appendRect(StringBuilder d, double x, double y, double w, double h) {
+        moveTo(d, x, y);
+        d.append('h').append(num(w)).append('v').append(num(h)).append('h').append(num(-w)).append('z');
+    }
+
+    /**
+     * Clockwise rectangle with rounded corners (radius rx/ry) where the corner flag is set.
+     */
+    private static void appendRoundRect(StringBuilder d, double x, double y, double w, double h, double rx, double ry,
+                                        boolean topLeft, boolean topRight, boolean bottomRight, boolean bottomLeft) {
+        moveTo(d, x + (topLeft ? rx : 0), y);
+        d.append('h').append(num(w - (topLeft ? rx : 0) - (topRight ? rx : 0)));
+        if (topRight) {
+            arc(d, rx, ry, rx, ry);
+        }
+        d.append('v').append(num(h - (topRight ? ry : 0) - (bottomRight ? ry : 0)));
+        if (bottomRight) {
+            arc(d, rx, ry, -rx, ry);
+        }
+        d.append('h').append(num(-(w - (bottomRight ? rx : 0) - (bottomLeft ? rx : 0))));
+        if (bottomLeft) {
+            arc(d, rx, ry, -rx, -ry);
+        }
+        d.append('v').append(num(-(h - (bottomLeft ? ry : 0) - (topLeft ? ry : 0))));
+        if (topLeft) {
+            arc(d, rx, ry, rx, -ry);
+        }
+        d.append('z');
+    }
+
+    private static void appendRoundRect(StringBuilder d, double x, double y, double w, double h, double rx, double ry) {
+        appendRoundRect(d, x, y, w, h, rx, ry, true, true, true, true);
+    }
+
+    private static void arc(StringBuilder d, double rx, double ry, double dx, double dy) {
+        d.append('a').append(num(rx)).append(' ').append(num(ry)).append(" 0 0 1 ").append(num(dx)).append(' ').append(num(dy));
+    }
+
+    private static void appendEllipse(StringBuilder d, double cx, double cy, double rx, double ry) {
+        moveTo(d, cx - rx, cy);
+        String r = num(rx) + ' ' + num(ry) + " 0 1 1 ";
+        d.append('a').append(r).append(num(2 * rx)).append(" 0");
+        d.append('a').append(r).append(num(-2 * rx)).append(" 0z");
+    }
+
+    /**
+     * Polygon with the vertices of Hexagon.setFaceCount(): 6 points at i * 360 / faces degrees.
+     */
+    private static void appendPolygon(StringBuilder d, double cx, double cy, double radius, int faces) {
+        for (int i = 0; i < 6; i++) {
+            double angle = i * 2 * Math.PI / faces;
+            d.append(i == 0 ? 'M' : 'L').append(num(cx + radius * Math.cos(angle))).append(' ')
+                    .append(num(cy + radius * Math.sin(angle)));
+        }
+        d.append('z');
+    }
+
+    private static void appendDiamond(StringBuilder d, int x, int y) {
+        moveTo(d, x + 1, y + 0.5);
+        d.append("l-.5 .5l-.5-.5l.5-.5z");
+    }
+
+    private static String fill(Color color) {
+        StringBuilder attr = new StringBuilder(" fill=\"#");
+        String hex = Integer.toHexString(color.getRGB() & 0xFFFFFF);
+        for (int i = hex.length(); i < 6; i++) {
+            attr.append('0');
+        }
+        attr.append(hex).append('"');
+        if (color.getAlpha() != 255) {
+            attr.append(" fill-opacity=\"").append(num(color.getAlpha() / 255d)).append('"');
+        }
+        return attr.toString();
+    }
+
+    /**
+     * @return the value with at most 3 decimals, without trailing zeros or leading zero (i.e. ".5").
+     */
+    static String num(double value) {
+        long scaled = Math.round(value * 1000);
+        if (scaled % 1000 == 0) {
+            return Long.toString(scaled / 1000);
+        }
+        String s = BigDecimal.valueOf(scaled, 3).stripTrailingZeros().toPlainString();
+        if (s.startsWith("0.")) {
+            return s.substring(1);
+        }
+        if (s.startsWith("-0.")) {
+            return "-" + s.substring(2);
+        }
+        return s;
+    }
+
+    private static void escape(Appendable out, String value) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&':
+                    out.append("&amp;");
+                    break;
+                case '<':
+                    out.append("&lt;");
+                    break;
+                case '"':
+                    out.append("&quot;");
+                    break;
+                default:
+                    out.append(c);
+            }
+        }
+    }
+}
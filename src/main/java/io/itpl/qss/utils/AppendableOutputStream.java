@@ -0,0 +1,48 @@
+package io.itpl.qss.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.CharBuffer;
+
+/**
+ * OutputStream appending the written bytes as ISO-8859-1 chars (one char per byte) to an Appendable,
+ * i.e. a StringBuilder or a Writer. Meant for ASCII output such as Base64, which then needs no charset encoder.
+ */
+public class AppendableOutputStream extends OutputStream {
+    private final Appendable out;
+    private final char[] chars = new char[1024];
+
+    public AppendableOutputStream(Appendable out) {
+        this.out = out;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.append((char) (b & 0xFF));
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = Math.min(len, chars.length);
+            for (int i = 0; i < n; i++) {
+                chars[i] = (char) (b[off + i] & 0xFF);
+            }
+            if (out instanceof Writer) {
+                ((Writer) out).write(chars, 0, n);
+            } else {
+                out.append(CharBuffer.wrap(chars, 0, n));
+            }
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (out instanceof Writer) {
+            ((Writer) out).flush();
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package io.itpl.qss.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * OutputStream writing into a ByteBuffer (heap or direct) from its current position.
+ * The buffer does not grow, writing past its limit fails with an IOException.
+ */
+public class ByteBufferOutputStream extends OutputStream {
+    private final ByteBuffer buffer;
+
+    public ByteBufferOutputStream(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    public ByteBuffer getBuffer() {
+        return this.buffer;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (!buffer.hasRemaining()) {
+            throw new IOException("ByteBuffer is full, capacity:" + buffer.capacity());
+        }
+        buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (len > buffer.remaining()) {
+            throw new IOException("ByteBuffer is full, capacity:" + buffer.capacity() + ", required:" + (buffer.position() + len));
+        }
+        buffer.put(b, off, len);
+    }
+}
@@ -0,0 +1,237 @@
+package io.itpl.qss.utils;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Bounded cache of the logo images used by QRUtils.getOverlayImageURL().
+ * <ul>
+ * <li>Each entry keeps the encoded image and its resized variants per QR image height. A variant is decoded
+ * with subsampling near its own size (see QRUtils.readLogo()), so a large upload is never decoded in full.
+ * <li>Entries are evicted in LRU order once the encoded bytes plus the variant pixels exceed maxBytes.
+ * <li>After ttlMillis an entry is revalidated with a conditional request (If-None-Match / If-Modified-Since),
+ * the image is only fetched again if it has changed.
+ * <li>Concurrent requests of a logo which is not cached (or stale) share a single fetch.
+ * </ul>
+ * The cache is thread safe, the images it hands out are shared and must not be modified.
+ */
+public class LogoCache {
+    private final long maxBytes;
+    private final long ttlMillis;
+    private long bytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, FutureTask<Entry>> loading = new HashMap<>();
+
+    /**
+     * @param maxBytes upper bound of the decoded pixel memory held by the cache.
+     * @param ttlMillis time after which a logo is revalidated against its URL.
+     */
+    public LogoCache(long maxBytes, long ttlMillis) {
+        this.maxBytes = maxBytes;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * @param url URL of the logo image.
+     * @param qrImageHeight height of the QR image the logo is placed on.
+     * @return logo resized for the given QR image height (see QRUtils.readLogo()).
+     * @throws IOException in case the image can not be fetched or decoded.
+     */
+    public BufferedImage getFittedImage(String url, int qrImageHeight) throws IOException {
+        Entry entry = getEntry(url);
+        BufferedImage fitted;
+        synchronized (this) {
+            fitted = entry.variants.get(qrImageHeight);
+        }
+        if (fitted == null) {
+            fitted = QRUtils.readLogo(new ByteArrayInputStream(entry.encoded), qrImageHeight);
+            synchronized (this) {
+                if (entry.variants.put(qrImageHeight, fitted) == null && entries.get(url) == entry) {
+                    long size = sizeOf(fitted);
+                    entry.bytes += size;
+                    bytes += size;
+                    evict();
+                }
+            }
+        }
+        return fitted;
+    }
+
+    /**
+     * @param url URL of the logo image.
+     * @return the image file as fetched from the URL, shared with the cache and must not be modified.
+     * @throws IOException in case the image can not be fetched or its format is not supported.
+     */
+    public byte[] getEncodedImage(String url) throws IOException {
+        return getEntry(url).encoded;
+    }
+
+    /**
+     * Drop all the cached logos.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    /**
+     * @return decoded bytes currently held by the cache.
+     */
+    public synchronized long getSize() {
+        return bytes;
+    }
+
+    private Entry getEntry(String url) throws IOException {
+        long now = System.currentTimeMillis();
+        FutureTask<Entry> task;
+        boolean loader = false;
+        synchronized (this) {
+            Entry cached = entries.get(url);
+            if (cached != null && now - cached.validatedAt < ttlMillis) {
+                return cached;
+            }
+            task = loading.get(url);
+            if (task == null) {
+                // The other threads wait for this fetch instead of starting their own.
+                task = new FutureTask<>(() -> store(url, cached, load(url, cached, now)));
+                loading.put(url, task);
+                loader = true;
+            }
+        }
+        if (loader) {
+            try {
+                task.run();
+            } finally {
+                synchronized (this) {
+                    loading.remove(url);
+                }
+            }
+        }
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while fetching the logo:" + url);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Replace the cached entry with the loaded one, unless the cached one was revalidated.
+     */
+    private synchronized Entry store(String url, Entry cached, Entry loaded) {
+        if (loaded != cached) {
+            Entry previous = entries.put(url, loaded);
+            if (previous != null) {
+                bytes -= previous.bytes;
+            }
+            bytes += loaded.bytes;
+            evict();
+        }
+        return loaded;
+    }
+
+    /**
+     * Fetch the logo, or only revalidate it when a stale entry exists.
+     * @return the stale entry when it is still valid, otherwise a new one.
+     */
+    private Entry load(String url, Entry stale, long now) throws IOException {
+        URLConnection connection = new URL(url).openConnection();
+        if (stale != null) {
+            if (stale.etag != null) {
+                connection.setRequestProperty("If-None-Match", stale.etag);
+            }
+            if (stale.lastModified > 0) {
+                connection.setIfModifiedSince(stale.lastModified);
+            }
+        }
+        if (connection instanceof HttpURLConnection) {
+            HttpURLConnection http = (HttpURLConnection) connection;
+            if (stale != null && http.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                http.disconnect();
+                stale.validatedAt = now;
+                return stale;
+            }
+        } else if (stale != null && connection.getLastModified() > 0
+                && connection.getLastModified() == stale.lastModified) {
+            // i.e. file: URLs, unchanged since the last load. getLastModified() connected, which opened the file.
+            connection.getInputStream().close();
+            stale.validatedAt = now;
+            return stale;
+        }
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        try (InputStream in = connection.getInputStream()) {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                encoded.write(buffer, 0, n);
+            }
+        }
+        byte[] bytes = encoded.toByteArray();
+        // Only the header is checked here, the pixels are decoded per variant.
+        try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(bytes))) {
+            if (!ImageIO.getImageReaders(in).hasNext()) {
+                throw new IOException("Unsupported logo image format:" + url);
+            }
+        }
+        return new Entry(bytes, connection.getHeaderField("ETag"), connection.getLastModified(), now);
+    }
+
+    private void evict() {
+        Iterator<Entry> lru = entries.values().iterator();
+        while (bytes > maxBytes && lru.hasNext()) {
+            Entry eldest = lru.next();
+            bytes -= eldest.bytes;
+            lru.remove();
+        }
+    }
+
+    static long sizeOf(BufferedImage image) {
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+
+    private static final class Entry {
+        final byte[] encoded;
+        final String etag;
+        final long lastModified;
+        final Map<Integer, BufferedImage> variants = new HashMap<>();
+        volatile long validatedAt;
+        long bytes;
+
+        Entry(byte[] encoded, String etag, long lastModified, long validatedAt) {
+            this.encoded = encoded;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.validatedAt = validatedAt;
+            this.bytes = encoded.length;
+        }
+    }
+}
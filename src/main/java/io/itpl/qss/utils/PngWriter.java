@@ -0,0 +1,649 @@
+package io.itpl.qss.utils;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.IndexColorModel;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * PNG encoder for the generated images, which usually have only 2-4 colors.
+ * <ul>
+ * <li>Images with up to 256 colors are written as indexed PNG with 1, 2, 4 or 8 bits per pixel,
+ * others as 8 bit RGB (or RGBA if the image has alpha).
+ * <li>Scaled QR images repeat each row many times, a repeated indexed row is written with the Up filter (all zeros),
+ * other indexed rows without filter. Truecolor rows use the filter with the minimum sum of absolute differences.
+ * <li>TYPE_BYTE_BINARY images are written straight from their packed samples with the palette of their color model.
+ * <li>No time or text chunks are written, so the same image always gives the same bytes.
+ * </ul>
+ * Renderers can also stream the image row by row (see beginIndexed(), beginTrueColor()) without holding all of it.
+ */
+public class PngWriter {
+    public static final int DEFAULT_COMPRESSION_LEVEL = 6;
+    /**
+     * Maximum number of colors of an indexed PNG.
+     */
+    public static final int MAX_PALETTE_SIZE = 256;
+
+    private static final byte[] SIGNATURE = {(byte) 137, 80, 78, 71, 13, 10, 26, 10};
+    private static final int IDAT_SIZE = 32 * 1024;
+
+    private static final int COLOR_TYPE_RGB = 2;
+    private static final int COLOR_TYPE_INDEXED = 3;
+    private static final int COLOR_TYPE_RGBA = 6;
+
+    private static final int FILTER_NONE = 0;
+    private static final int FILTER_SUB = 1;
+    private static final int FILTER_UP = 2;
+    private static final int FILTER_PAETH = 4;
+
+    private final int compressionLevel;
+
+    public PngWriter() {
+        this(DEFAULT_COMPRESSION_LEVEL);
+    }
+
+    /**
+     * @param compressionLevel deflate level, 0 (none) to 9 (best).
+     */
+    public PngWriter(int compressionLevel) {
+        if (compressionLevel < Deflater.NO_COMPRESSION || compressionLevel > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level:" + compressionLevel);
+        }
+        this.compressionLevel = compressionLevel;
+    }
+
+    public int getCompressionLevel() {
+        return this.compressionLevel;
+    }
+
+    /**
+     * Encode the image, indexed if it has no more than 256 colors.
+     * @param image image to write.
+     * @param out destination stream, it is not closed.
+     * @throws IOException in case of failure of writing to the stream.
+     */
+    public void write(BufferedImage image, OutputStream out) throws IOException {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        RowEncoder encoder;
+        if (isPacked(image)) {
+            encoder = beginIndexed(out, width, height, (IndexColorModel) image.getColorModel());
+        } else {
+            int[] palette = findPalette(image, MAX_PALETTE_SIZE);
+            encoder = palette != null
+                    ? beginIndexed(out, width, height, palette)
+                    : beginTrueColor(out, width, height, image.getColorModel().hasAlpha());
+        }
+        try {
+            encoder.writeRows(image, 0, height);
+            encoder.finish();
+        } finally {
+            encoder.end();
+        }
+    }
+
+    /**
+     * @return true for the TYPE_BYTE_BINARY images (i.e. from QRUtils.createCanvas()) written from their packed samples.
+     */
+    private static boolean isPacked(BufferedImage image) {
+        return image.getType() == BufferedImage.TYPE_BYTE_BINARY && image.getRaster().getParent() == null
+                && ((MultiPixelPackedSampleModel) image.getRaster().getSampleModel()).getDataBitOffset() == 0;
+    }
+
+    /**
+     * @param image image to scan.
+     * @param maxColors maximum number of colors to collect.
+     * @return the ARGB colors of the image in the order of first appearance, null if it has more than maxColors.
+     */
+    public static int[] findPalette(BufferedImage image, int maxColors) {
+        ColorTable table = new ColorTable();
+        int[] row = new int[image.getWidth()];
+        int last = 0;
+        boolean first = true;
+        for (int y = 0; y < image.getHeight(); y++) {
+            getRow(image, y, row);
+            for (int argb : row) {
+                if (argb == last && !first) {
+                    continue;
+                }
+                first = false;
+                last = argb;
+                if (table.indexOf(argb) < 0) {
+                    if (table.size == maxColors) {
+                        return null;
+                    }
+                    table.add(argb);
+                }
+            }
+        }
+        return Arrays.copyOf(table.colors, table.size);
+    }
+
+    /**
+     * Start an indexed PNG, the rows are written with RowEncoder.writeRow().
+     * @param out destination stream, it is not closed.
+     * @param palette ARGB colors of the image (at most 256), every pixel must be one of them.
+     */
+    public RowEncoder beginIndexed(OutputStream out, int width, int height, int[] palette) throws IOException {
+        if (palette.length == 0 || palette.length > MAX_PALETTE_SIZE) {
+            throw new IllegalArgumentException("Invalid palette size:" + palette.length);
+        }
+        int bitDepth = palette.length <= 2 ? 1 : palette.length <= 4 ? 2 : palette.length <= 16 ? 4 : 8;
+        return new RowEncoder(out, width, height, bitDepth, COLOR_TYPE_INDEXED, palette, compressionLevel);
+    }
+
+    /**
+     * Start an indexed PNG with the colors of a color model, i.e. of the TYPE_BYTE_BINARY canvases of
+     * QRUtils.createCanvas(). RowEncoder.writeRows() writes the images of this model from their packed samples,
+     * the palette comes from the model instead of a scan of the pixels.
+     * @param out destination stream, it is not closed.
+     * @param model color model of the images, repeated colors are written once.
+     */
+    public RowEncoder beginIndexed(OutputStream out, int width, int height, IndexColorModel model) throws IOException {
+        int[] colors = new int[model.getMapSize()];
+        model.getRGBs(colors);
+        // The color map may repeat colors, PNG palettes may not.
+        ColorTable table = new ColorTable();
+        int[] remap = new int[colors.length];
+        for (int i = 0; i < colors.length; i++) {
+            int index = table.indexOf(colors[i]);
+            if (index < 0) {
+                index = table.size;
+                table.add(colors[i]);
+            }
+            remap[i] = index;
+        }
+        RowEncoder encoder = beginIndexed(out, width, height, Arrays.copyOf(table.colors, table.size));
+        int sourceBits = model.getPixelSize();
+        if (sourceBits < 8 && 8 % sourceBits == 0) {
+            // Each source byte to the same pixels at the bit depth of the PNG.
+            int pixelsPerByte = 8 / sourceBits;
+            int[] lookup = new int[256];
+            for (int b = 0; b < 256; b++) {
+                int value = 0;
+                for (int p = 0; p < pixelsPerByte; p++) {
+                    value = value << encoder.bitDepth | remap[b >> (8 - sourceBits * (p + 1)) & ((1 << sourceBits) - 1)];
+                }
+                lookup[b] = value;
+            }
+            encoder.sourceModel = model;
+            encoder.sourceBits = sourceBits;
+            encoder.lookup = lookup;
+        }
+        return encoder;
+    }
+
+    /**
+     * Start an 8 bit RGB (or RGBA) PNG, the rows are written with RowEncoder.writeRow().
+     * @param out destination stream, it is not closed.
+     * @param alpha true to keep the alpha channel.
+     */
+    public RowEncoder beginTrueColor(OutputStream out, int width, int height, boolean alpha) throws IOException {
+        return new RowEncoder(out, width, height, 8, alpha ? COLOR_TYPE_RGBA : COLOR_TYPE_RGB, null, compressionLevel);
+    }
+
+    /**
+     * Read one row of ARGB pixels, straight from the pixel array for the int packed images.
+     */
+    static int[] getRow(BufferedImage image, int y, int[] row) {
+        int width = image.getWidth();
+        int type = image.getType();
+        if ((type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB)
+                && image.getRaster().getDataBuffer() instanceof DataBufferInt
+                && image.getRaster().getSampleModel() instanceof SinglePixelPackedSampleModel) {
+            int[] data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            SinglePixelPackedSampleModel model = (SinglePixelPackedSampleModel) image.getRaster().getSampleModel();
+            int offset = image.getRaster().getDataBuffer().getOffset()
+                    + (y - image.getRaster().getSampleModelTranslateY()) * model.getScanlineStride()
+                    - image.getRaster().getSampleModelTranslateX();
+            // The top byte of TYPE_INT_RGB is undefined.
+            int alpha = type == BufferedImage.TYPE_INT_RGB ? 0xFF000000 : 0;
+            for (int x = 0; x < width; x++) {
+                row[x] = data[offset + x] | alpha;
+            }
+            return row;
+        }
+        if (image.getColorModel() instanceof IndexColorModel) {
+            // Look the samples up in the palette, getRGB() converts every pixel through the color model.
+            IndexColorModel model = (IndexColorModel) image.getColorModel();
+            int[] palette = new int[model.getMapSize()];
+            model.getRGBs(palette);
+            image.getRaster().getSamples(0, y, width, 1, 0, row);
+            for (int x = 0; x < width; x++) {
+                row[x] = palette[row[x]];
+            }
+            return row;
+        }
+        return image.getRGB(0, y, width, 1, row, 0, width);
+    }
+
+    /**
+     * Encoder of the rows of one PNG image, to be written top to bottom.
+     */
+    public static final class RowEncoder {
+        private final OutputStream out;
+        private final int width;
+        private final int height;
+        private final int bitDepth;
+        private final int colorType;
+        private final ColorTable palette;
+        private final int bytesPerPixel;
+        private final Deflater deflater;
+        private final DeflaterOutputStream idat;
+        private byte[] current;
+        private byte[] previous;
+        private final byte[][] candidates;
+        private final byte[] zeroRow;
+        private int rows;
+        /**
+         * Packed images of this color model are written through the lookup table, see beginIndexed().
+         */
+        private IndexColorModel sourceModel;
+        private int sourceBits;
+        private int[] lookup;
+
+        private RowEncoder(OutputStream out, int width, int height, int bitDepth, int colorType, int[] palette,
+                           int compressionLevel) throws IOException {
+            if (width <= 0 || height <= 0) {
+                throw new IllegalArgumentException("Invalid image size:" + width + "x" + height);
+            }
+            this.out = out;
+            this.width = width;
+            this.height = height;
+            this.bitDepth = bitDepth;
+            this.colorType = colorType;
+            this.bytesPerPixel = colorType == COLOR_TYPE_RGBA ? 4 : colorType == COLOR_TYPE_RGB ? 3 : 1;
+            int rowBytes = colorType == COLOR_TYPE_INDEXED ? (width * bitDepth + 7) / 8 : width * bytesPerPixel;
+            this.current = new byte[rowBytes];
+            this.previous = new byte[rowBytes];
+            this.candidates = colorType == COLOR_TYPE_INDEXED ? null : new byte[3][rowBytes];
+            this.zeroRow = colorType == COLOR_TYPE_INDEXED ? new byte[rowBytes] : null;
+
+            out.write(SIGNATURE);
+            byte[] header = new byte[13];
+            putInt(header, 0, width);
+            putInt(header, 4, height);
+            header[8] = (byte) bitDepth;
+            header[9] = (byte) colorType;
+            // compression, filter and interlace methods are 0.
+            writeChunk(out, "IHDR", header, 0, header.length);
+            if (palette != null) {
+                this.palette = new ColorTable();
+                byte[] plte = new byte[palette.length * 3];
+                int transparent = 0;
+                for (int i = 0; i < palette.length; i++) {
+                    if (this.palette.indexOf(palette[i]) >= 0) {
+                        throw new IllegalArgumentException("Duplicate palette color:" + Integer.toHexString(palette[i]));
+                    }
+                    this.palette.add(palette[i]);
+                    plte[i * 3] = (byte) (palette[i] >>> 16);
+                    plte[i * 3 + 1] = (byte) (palette[i] >>> 8);
+                    plte[i * 3 + 2] = (byte) palette[i];
+                    if ((palette[i] >>> 24) != 0xFF) {
+                        transparent = i + 1;
+                    }
+                }
+                writeChunk(out, "PLTE", plte, 0, plte.length);
+                if (transparent > 0) {
+                    byte[] trns = new byte[transparent];
+                    for (int i = 0; i < transparent; i++) {
+                        trns[i] = (byte) (palette[i] >>> 24);
+                    }
+                    writeChunk(out, "tRNS", trns, 0, trns.length);
+                }
+            } else {
+                this.palette = null;
+            }
+            this.deflater = new Deflater(compressionLevel);
+            this.idat = new DeflaterOutputStream(new ChunkOutputStream(out, "IDAT"), deflater, IDAT_SIZE);
+        }
+
+        /**
+         * @param argb pixels of the row, width values from offset.
+         * @throws IOException in case of failure of writing to the stream.
+         * @throws IllegalArgumentException in case a pixel of an indexed image is not in the palette.
+         */
+        public void writeRow(int[] argb, int offset) throws IOException {
+            if (rows == height) {
+                throw new IllegalStateException("All the " + height + " rows are written");
+            }
+            if (palette != null) {
+                packIndexed(argb, offset);
+                writeIndexed();
+                return;
+            }
+            packTrueColor(argb, offset);
+            writeFiltered();
+            nextRow();
+        }
+
+        /**
+         * Write rows of an image, i.e. one strip of a larger image rendered in parts.
+         * @param image image as wide as the PNG.
+         * @param y first row of the image to write.
+         * @param count number of rows to write.
+         * @throws IOException in case of failure of writing to the stream.
+         * @throws IllegalArgumentException in case a pixel of an indexed image is not in the palette.
+         */
+        public void writeRows(BufferedImage image, int y, int count) throws IOException {
+            if (image.getWidth() != width) {
+                throw new IllegalArgumentException("Image width " + image.getWidth() + " instead of " + width);
+            }
+            if (lookup == null || image.getColorModel() != sourceModel || !isPacked(image)) {
+                int[] row = new int[width];
+                for (int i = 0; i < count; i++) {
+                    writeRow(getRow(image, y + i, row), 0);
+                }
+                return;
+            }
+            MultiPixelPackedSampleModel packed = (MultiPixelPackedSampleModel) image.getRaster().getSampleModel();
+            byte[] data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+            int targetBits = 8 / sourceBits * bitDepth;
+            int sourceBytes = (width * sourceBits + 7) / 8;
+            int padding = current.length * 8 - width * bitDepth;
+            for (int r = y; r < y + count; r++) {
+                byte[] row = current;
+                int offset = packed.getOffset(0, r) + image.getRaster().getDataBuffer().getOffset();
+                int bits = 0;
+                int length = 0;
+                int i = 0;
+                for (int x = 0; x < sourceBytes; x++) {
+                    bits = bits << targetBits | lookup[data[offset + x] & 0xFF];
+                    length += targetBits;
+                    while (length >= 8 && i < row.length) {
+                        length -= 8;
+                        row[i++] = (byte) (bits >> length);
+                    }
+                }
+                if (i < row.length) {
+                    row[i] = (byte) (bits << (8 - length));
+                }
+                // The pixels past the width are left 0, as in writeRow().
+                row[row.length - 1] &= (byte) (0xFF << padding);
+                writeIndexed();
+            }
+        }
+
+        /**
+         * Write the packed indices of the current row.
+         */
+        private void writeIndexed() throws IOException {
+            if (rows == height) {
+                throw new IllegalStateException("All the " + height + " rows are written");
+            }
+            if (rows > 0 && Arrays.equals(current, previous)) {
+                // Repeated row (the module pitch), Up filter makes it all zeros.
+                idat.write(FILTER_UP);
+                idat.write(zeroRow);
+            } else {
+                idat.write(FILTER_NONE);
+                idat.write(current);
+            }
+            nextRow();
+        }
+
+        private void nextRow() {
+            byte[] swap = previous;
+            previous = current;
+            current = swap;
+            rows++;
+        }
+
+        /**
+         * Write the end of the image, all the rows must be written before.
+         */
+        public void finish() throws IOException {
+            if (rows != height) {
+                throw new IllegalStateException("Only " + rows + " of " + height + " rows are written");
+            }
+            idat.finish();
+            idat.flush();
+            writeChunk(out, "IEND", new byte[0], 0, 0);
+            end();
+        }
+
+        /**
+         * Release the native deflater, without finishing the image (i.e. after a failure).
+         */
+        public void end() {
+            deflater.end();
+        }
+
+        private void packIndexed(int[] argb, int offset) {
+            byte[] row = current;
+            if (bitDepth == 8) {
+                int lastColor = argb[offset];
+                int lastIndex = index(lastColor);
+                for (int x = 0; x < width; x++) {
+                    int color = argb[offset + x];
+                    if (color != lastColor) {
+                        lastColor = color;
+                        lastIndex = index(color);
+                    }
+                    row[x] = (byte) lastIndex;
+                }
+                return;
+            }
+            Arrays.fill(row, (byte) 0);
+            int pixelsPerByte = 8 / bitDepth;
+            int lastColor = argb[offset];
+            int lastIndex = index(lastColor);
+            for (int x = 0; x < width; x++) {
+                int color = argb[offset + x];
+                if (color != lastColor) {
+                    lastColor = color;
+                    lastIndex = index(color);
+                }
+                int shift = 8 - bitDepth * (1 + x % pixelsPerByte);
+                row[x / pixelsPerByte] |= (byte) (lastIndex << shift);
+            }
+        }
+
+        private int index(int argb) {
+            int index = palette.indexOf(argb);
+            if (index < 0) {
+                throw new IllegalArgumentException("Color not in the palette:" + Integer.toHexString(argb));
+            }
+            return index;
+        }
+
+        private void packTrueColor(int[] argb, int offset) {
+            byte[] row = current;
+            int i = 0;
+            for (int x = 0; x < width; x++) {
+                int color = argb[offset + x];
+                row[i++] = (byte) (color >>> 16);
+                row[i++] = (byte) (color >>> 8);
+                row[i++] = (byte) color;
+                if (bytesPerPixel == 4) {
+                    row[i++] = (byte) (color >>> 24);
+                }
+            }
+        }
+
+        /**
+         * Pick the filter with the minimum sum of absolute differences (PNG specification, 12.8).
+         */
+        private void writeFiltered() throws IOException {
+            byte[] row = current;
+            byte[] up = previous;
+            boolean firstRow = rows == 0;
+            byte[] sub = candidates[0];
+            byte[] upFiltered = candidates[1];
+            byte[] paeth = candidates[2];
+            long sumNone = 0;
+            long sumSub = 0;
+            long sumUp = 0;
+            long sumPaeth = 0;
+            for (int i = 0; i < row.length; i++) {
+                int raw = row[i] & 0xFF;
+                int a = i >= bytesPerPixel ? row[i - bytesPerPixel] & 0xFF : 0;
+                int b = firstRow ? 0 : up[i] & 0xFF;
+                int c = firstRow || i < bytesPerPixel ? 0 : up[i - bytesPerPixel] & 0xFF;
+                sub[i] = (byte) (raw - a);
+                upFiltered[i] = (byte) (raw - b);
+                paeth[i] = (byte) (raw - paethPredictor(a, b, c));
+                sumNone += Math.abs((int) row[i]);
+                sumSub += Math.abs((int) sub[i]);
+                sumUp += Math.abs((int) upFiltered[i]);
+                sumPaeth += Math.abs((int) paeth[i]);
+            }
+            int filter = FILTER_NONE;
+            byte[] data = row;
+            long min = sumNone;
+            if (sumSub < min) {
+                filter = FILTER_SUB;
+                data = sub;
+                min = sumSub;
+            }
+            if (sumUp < min) {
+                filter = FILTER_UP;
+                data = upFiltered;
+                min = sumUp;
+            }
+            if (sumPaeth < min) {
+                filter = FILTER_PAETH;
+                data = paeth;
+            }
+            idat.write(filter);
+            idat.write(data);
+        }
+
+        private static int paethPredictor(int a, int b, int c) {
+            int p = a + b - c;
+            int pa = Math.abs(p - a);
+            int pb = Math.abs(p - b);
+            int pc = Math.abs(p - c);
+            if (pa <= pb && pa <= pc) {
+                return a;
+            }
+            return pb <= pc ? b : c;
+        }
+    }
+
+    private static void writeChunk(OutputStream out, String type, byte[] data, int offset, int length) throws IOException {
+        byte[] header = new byte[8];
+        putInt(header, 0, length);
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(typeBytes, 0, header, 4, 4);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, offset, length);
+        out.write(header);
+        out.write(data, offset, length);
+        byte[] trailer = new byte[4];
+        putInt(trailer, 0, (int) crc.getValue());
+        out.write(trailer);
+    }
+
+    private static void putInt(byte[] b, int offset, int value) {
+        b[offset] = (byte) (value >>> 24);
+        b[offset + 1] = (byte) (value >>> 16);
+        b[offset + 2] = (byte) (value >>> 8);
+        b[offset + 3] = (byte) value;
+    }
+
+    /**
+     * Splits the compressed data into chunks of the given type.
+     */
+    private static final class ChunkOutputStream extends OutputStream {
+        private final OutputStream out;
+        private final String type;
+        private final byte[] buffer = new byte[IDAT_SIZE];
+        private int count;
+
+        ChunkOutputStream(OutputStream out, String type) {
+            this.out = out;
+            this.type = type;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) {
+                flushChunk();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == buffer.length) {
+                    flushChunk();
+                }
+                int n = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            flushChunk();
+            out.flush();
+        }
+
+        /**
+         * Closing the image does not close the destination.
+         */
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+
+        private void flushChunk() throws IOException {
+            if (count > 0) {
+                writeChunk(out, type, buffer, 0, count);
+                count = 0;
+            }
+        }
+    }
+
+    /**
+     * Open addressing map of ARGB color to palette index.
+     */
+    private static final class ColorTable {
+        private static final int MASK = 1023;
+        private final int[] keys = new int[MASK + 1];
+        private final short[] values = new short[MASK + 1];
+        private final int[] colors = new int[MAX_PALETTE_SIZE];
+        private int size;
+
+        int indexOf(int argb) {
+            int slot = hash(argb);
+            while (values[slot] != 0) {
+                if (keys[slot] == argb) {
+                    return values[slot] - 1;
+                }
+                slot = (slot + 1) & MASK;
+            }
+            return -1;
+        }
+
+        void add(int argb) {
+            int slot = hash(argb);
+            while (values[slot] != 0) {
+                slot = (slot + 1) & MASK;
+            }
+            keys[slot] = argb;
+            values[slot] = (short) (size + 1);
+            colors[size++] = argb;
+        }
+
+        private static int hash(int argb) {
+            int h = argb * 0x9E3779B9;
+            return (h ^ (h >>> 16)) & MASK;
+        }
+    }
+}
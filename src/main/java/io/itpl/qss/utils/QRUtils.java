@@ -4,20 +4,55 @@ package io.itpl.qss.utils;
 
 import io.itpl.qss.render.QRCode;
 import io.itpl.qss.render.StyleConfig;
+import io.itpl.qss.render.StyleSnapshot;
 import io.itpl.qss.exception.ImageSizeException;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.RandomAccessFile;
 import java.net.URL;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
 
 public class QRUtils {
 	private static final String ALIAS = "QRUtils";
+	/**
+	 * Logos fetched by getOverlayImageURL() are cached here (64MB of decoded pixels, revalidated after 10 minutes).
+	 */
+	private static volatile LogoCache logoCache = new LogoCache(64L * 1024 * 1024, 10 * 60 * 1000L);
+
+	/**
+	 * Replace the logo cache used by getOverlayImageURL().
+	 * @param cache new cache, or null to fetch the logo on every call.
+	 */
+	public static void setLogoCache(LogoCache cache) {
+		logoCache = cache;
+	}
+
+	/**
+	 * @return the logo cache used by getOverlayImageURL(), null if caching is disabled.
+	 */
+	public static LogoCache getLogoCache() {
+		return logoCache;
+	}
     public static BufferedImage getImageFromURL(String url) throws IOException {
         URL imageURL = new URL(url);
         return ImageIO.read(imageURL);
@@ -37,51 +72,240 @@ public class QRUtils {
     }
 
     public static BufferedImage getOverlayImageURL(BufferedImage qrImage, String url, StyleConfig styleConfig) throws IOException,ImageSizeException {
-    	Date t1 = new Date();
-        BufferedImage overly = getImageFromURL(url);
-        long r1 = new Date().getTime()-t1.getTime();
-        return getOverlayImage(qrImage,overly,styleConfig);
+        BufferedImage overly = getFittedLogo(url, qrImage.getHeight());
+        return drawOverlay(qrImage, overly, styleConfig);
+
+    }
+
+    /**
+     * @param url URL of the logo image.
+     * @param qrImageHeight height of the QR image the logo is placed on.
+     * @return the logo resized as getOverlayImageURL() draws it, from the logo cache if enabled.
+     * @throws IOException in case the image can not be fetched or decoded.
+     */
+    public static BufferedImage getFittedLogo(String url, int qrImageHeight) throws IOException {
+        LogoCache cache = logoCache;
+        if (cache == null) {
+            try (InputStream in = new URL(url).openStream()) {
+                return readLogo(in, qrImageHeight);
+            }
+        }
+        // The cache hands out the logo already resized for this QR image height.
+        return cache.getFittedImage(url, qrImageHeight);
+    }
 
+    /**
+     * Fetch the logo once for several QR images, i.e. the renditions of QRGenerator.generateRenditions().
+     * @param url URL of the logo image.
+     * @param qrImageHeights heights of the QR images the logo is placed on.
+     * @return the logo resized for each height, as getFittedLogo() would. The heights with the same subsampling
+     * (see readLogo()) share one decode.
+     * @throws IOException in case the image can not be fetched or decoded.
+     */
+    public static BufferedImage[] getFittedLogos(String url, int... qrImageHeights) throws IOException {
+        int[] minHeights = new int[qrImageHeights.length];
+        for (int i = 0; i < minHeights.length; i++) {
+            minHeights[i] = 2 * (qrImageHeights[i] / 5);
+        }
+        BufferedImage[] sources = readImages(new ByteArrayInputStream(getLogoBytes(url)), minHeights);
+        BufferedImage[] logos = new BufferedImage[qrImageHeights.length];
+        for (int i = 0; i < logos.length; i++) {
+            logos[i] = fitLogo(sources[i], qrImageHeights[i]);
+        }
+        return logos;
+    }
+
+    /**
+     * @param url URL of the logo image.
+     * @param qrImageHeight height of the QR image the logo is placed on.
+     * @return the logo decoded close to its size on the QR image but not resized, to be drawn scaled to
+     * getFittedLogoSize() (see paintOverlay()). Unlike getFittedLogo() it is never larger than the source image.
+     * @throws IOException in case the image can not be fetched or decoded.
+     */
+    public static BufferedImage getLogo(String url, int qrImageHeight) throws IOException {
+        return readImage(new ByteArrayInputStream(getLogoBytes(url)), qrImageHeight / 5);
+    }
+
+    /**
+     * @param url URL of the logo image.
+     * @return the logo as a data URI (i.e. "data:image/png;base64,..."), to embed it in SVG or HTML.
+     * @throws IOException in case the image can not be fetched or its format is not supported.
+     */
+    public static String getLogoDataURI(String url) throws IOException {
+        byte[] encoded = getLogoBytes(url);
+        String mimeType = null;
+        try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(encoded))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (readers.hasNext()) {
+                String[] mimeTypes = readers.next().getOriginatingProvider().getMIMETypes();
+                if (mimeTypes != null && mimeTypes.length > 0) {
+                    mimeType = mimeTypes[0];
+                }
+            }
+        }
+        if (mimeType == null) {
+            throw new IOException("Unsupported logo image format:" + url);
+        }
+        return "data:" + mimeType + ";base64," + Base64.getEncoder().encodeToString(encoded);
+    }
+    /**
+     * @return the image file of the logo, from the logo cache if enabled.
+     */
+    private static byte[] getLogoBytes(String url) throws IOException {
+        LogoCache cache = logoCache;
+        if (cache != null) {
+            return cache.getEncodedImage(url);
+        }
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        try (InputStream in = new URL(url).openStream()) {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                binary.write(buffer, 0, n);
+            }
+        }
+        return binary.toByteArray();
     }
+
     public static BufferedImage getOverlayImage(BufferedImage qrImage, String url,StyleConfig styleConfig) throws IOException,ImageSizeException {
-        BufferedImage overly = getImageFromFile(url);
-        return getOverlayImage(qrImage,overly,styleConfig);
+        BufferedImage overly = readLogo(new File(url), qrImage.getHeight());
+        return drawOverlay(qrImage,overly,styleConfig);
 
     }
     public static BufferedImage getOverlayImage(BufferedImage qrImage, BufferedImage overly,StyleConfig styleConfig) throws IOException,ImageSizeException {
-        // Load logo image
-        // Check the size
-    	
-        int width = overly.getWidth();
-        int height = overly.getHeight();
+        return drawOverlay(qrImage, fitLogo(overly, qrImage.getHeight()), styleConfig);
+    }
+
+    /**
+     * Decode the logo close to the size it is drawn at and resize it to fit in the QR image.
+     * Large uploads are subsampled while decoding, so the work no longer grows with the size of the source image.
+     * @param input File, InputStream or any other input supported by ImageIO.createImageInputStream().
+     * @param qrImageHeight height of the QR image the logo is placed on.
+     * @return resized logo.
+     * @throws IOException in case the image can not be read or the format is not supported.
+     */
+    static BufferedImage readLogo(Object input, int qrImageHeight) throws IOException {
+        // Keep twice the required height, the remaining downscale smooths out the skipped pixels.
+        BufferedImage overly = readImage(input, 2 * (qrImageHeight / 5));
+        return fitLogo(overly, qrImageHeight);
+    }
+
+    /**
+     * Decode an image, skipping rows and columns (ImageReadParam source subsampling) as long as
+     * the result is still at least minHeight pixels high.
+     * @param input File, InputStream or any other input supported by ImageIO.createImageInputStream().
+     * @param minHeight minimum height of the decoded image, 0 to decode the full resolution.
+     * @return decoded image.
+     * @throws IOException in case the image can not be read or the format is not supported.
+     */
+    static BufferedImage readImage(Object input, int minHeight) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(input)) {
+            if (in == null) {
+                throw new IOException("Unable to read image:" + input);
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                throw new IOException("Unsupported image format:" + input);
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                ImageReadParam param = reader.getDefaultReadParam();
+                int subsampling = minHeight > 0 ? reader.getHeight(0) / minHeight : 1;
+                if (subsampling > 1) {
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                }
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Decode an image for several minimum heights, as readImage() for each of them, with one reader. The heights
+     * resolving to the same subsampling share the decoded image.
+     * @param input File, InputStream or any other input supported by ImageIO.createImageInputStream().
+     * @param minHeights minimum heights of the decoded images, 0 to decode the full resolution.
+     * @return the decoded image of each height.
+     * @throws IOException in case the image can not be read or the format is not supported.
+     */
+    static BufferedImage[] readImages(Object input, int... minHeights) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(input)) {
+            if (in == null) {
+                throw new IOException("Unable to read image:" + input);
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                throw new IOException("Unsupported image format:" + input);
+            }
+            ImageReader reader = readers.next();
+            try {
+                // Not seek forward only, the image is read again for each subsampling.
+                reader.setInput(in, false, true);
+                int height = reader.getHeight(0);
+                Map<Integer, BufferedImage> decoded = new HashMap<>();
+                BufferedImage[] images = new BufferedImage[minHeights.length];
+                for (int i = 0; i < images.length; i++) {
+                    int subsampling = minHeights[i] > 0 ? Math.max(1, height / minHeights[i]) : 1;
+                    BufferedImage image = decoded.get(subsampling);
+                    if (image == null) {
+                        ImageReadParam param = reader.getDefaultReadParam();
+                        if (subsampling > 1) {
+                            param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                        }
+                        image = reader.read(0, param);
+                        decoded.put(subsampling, image);
+                    }
+                    images[i] = image;
+                }
+                return images;
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Resize the logo to fit in the QR image (1/5 of its height, at most twice the logo size).
+     * @param overly logo image.
+     * @param qrImageHeight height of the QR image the logo is placed on.
+     * @return resized logo.
+     */
+    static BufferedImage fitLogo(BufferedImage overly, int qrImageHeight) {
+        Dimension size = getFittedLogoSize(overly.getWidth(), overly.getHeight(), qrImageHeight);
+        //overly = resize(overly, logoImageWidth, logoImageWidth);
+        return resize(overly, size.width, size.height);
+    }
+
+    /**
+     * @param width width of the logo image.
+     * @param height height of the logo image.
+     * @param qrImageHeight height of the QR image the logo is placed on.
+     * @return the size of the logo on the QR image, see fitLogo().
+     */
+    public static Dimension getFittedLogoSize(int width, int height, int qrImageHeight) {
         //if (width != height)
         //    throw new ImageSizeException("Image must be with 1:1 aspect ratio");
 
-        int requiredLogoImageHeight = qrImage.getHeight()/5;
-
+        int requiredLogoImageHeight = qrImageHeight/5;
         // For Example Logo Image Height is 620 & Requied Size is 250
         // So, delta can be calculated as 620 - 250 = 370
         // now delta, i.e 370/620 is a scale value to resize.i.e. 0.60 (60%)
         // calculated new height will be 620 * 0.60
         // same way, in order to maintain same aspect ratio, we will calculate width as well.
-        int delta = Math.abs(height - requiredLogoImageHeight);
-
         float resizeScale = ((float)requiredLogoImageHeight / (float)height);
 
         if(resizeScale > 1) {
         	resizeScale = 2;
         }
-        requiredLogoImageHeight = Math.round(height * resizeScale);
-        int requiredLogoWidth = Math.round(width * resizeScale);
-
-
-        //overly = resize(overly, logoImageWidth, logoImageWidth);
-        overly = resize(overly, requiredLogoWidth, requiredLogoImageHeight);
-
-        // Calculate the delta height and width between QR code and logo
-        int deltaHeight = qrImage.getHeight() - overly.getHeight();
-        int deltaWidth = qrImage.getWidth() - overly.getWidth();
+        return new Dimension(Math.round(width * resizeScale), Math.round(height * resizeScale));
+    }
 
+    /**
+     * Place the already resized logo in the center of the QR image.
+     */
+    private static BufferedImage drawOverlay(BufferedImage qrImage, BufferedImage overly, StyleConfig styleConfig) {
         // Initialize combined image
         BufferedImage combined = new BufferedImage(qrImage.getHeight(), qrImage.getWidth(),
                 BufferedImage.TYPE_INT_RGB);
@@ -89,13 +313,61 @@ public class QRUtils {
 
         // Write QR code to new image at position 0/0
         g.drawImage(qrImage, 0, 0, null);
+        paintOverlay(g, qrImage.getWidth(), qrImage.getHeight(), overly, styleConfig);
+        g.dispose();
+        return combined;
+
+    }
 
+    /**
+     * Draw the already resized logo (see getFittedLogo()) and its background in the center of the image.
+     * @param g graphics of the QR image, which must be able to hold the logo colors (i.e. TYPE_INT_RGB).
+     * @param width width of the QR image.
+     * @param height height of the QR image.
+     * @param overly the resized logo.
+     * @param styleConfig style with the logo background.
+     */
+    public static void paintOverlay(Graphics2D g, int width, int height, BufferedImage overly, StyleConfig styleConfig) {
+        paintOverlay(g, width, height, overly, overly.getWidth(), overly.getHeight(), styleConfig.freeze());
+    }
+
+    /**
+     * Same as above, with a frozen style.
+     */
+    public static void paintOverlay(Graphics2D g, int width, int height, BufferedImage overly, StyleSnapshot style) {
+        paintOverlay(g, width, height, overly, overly.getWidth(), overly.getHeight(), style);
+    }
+
+    /**
+     * Same as below, with a frozen style.
+     */
+    public static void paintOverlay(Graphics2D g, int width, int height, BufferedImage overly, int logoWidth,
+                                    int logoHeight, StyleConfig styleConfig) {
+        paintOverlay(g, width, height, overly, logoWidth, logoHeight, styleConfig.freeze());
+    }
+
+    /**
+     * Draw the logo scaled to logoWidth x logoHeight (bilinear) and its background in the center of the image.
+     * Used where a resized copy of the logo would be too large, i.e. the strips of QRGenerator.writePngStripsTo().
+     * @param g graphics of the QR image, which must be able to hold the logo colors (i.e. TYPE_INT_RGB).
+     * @param width width of the QR image.
+     * @param height height of the QR image.
+     * @param overly the logo (see getLogo()).
+     * @param logoWidth width of the logo on the QR image (see getFittedLogoSize()).
+     * @param logoHeight height of the logo on the QR image.
+     * @param styleConfig style with the logo background.
+     */
+    public static void paintOverlay(Graphics2D g, int width, int height, BufferedImage overly, int logoWidth,
+                                    int logoHeight, StyleSnapshot styleConfig) {
+        // Calculate the delta height and width between QR code and logo
+        int deltaHeight = height - logoHeight;
+        int deltaWidth = width - logoWidth;
 
         //g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 1f));
-        int deltaBoxW = Math.round(overly.getWidth()*0.2f);
-        int deltaBoxY = Math.round(overly.getHeight()*0.2f);
-        int logoCircleWidth = Math.round(overly.getWidth()) + Math.round(overly.getWidth()*0.2f) ; //20% margin
-        int logoCircleHeight = Math.round(overly.getHeight()) + Math.round(overly.getHeight()*0.2f) ; //20% margin
+        int deltaBoxW = Math.round(logoWidth*0.2f);
+        int deltaBoxY = Math.round(logoHeight*0.2f);
+        int logoCircleWidth = logoWidth + Math.round(logoWidth*0.2f) ; //20% margin
+        int logoCircleHeight = logoHeight + Math.round(logoHeight*0.2f) ; //20% margin
         
         // Write logo into combine image at position (deltaWidth / 2) and
         // (deltaHeight / 2). Background: Left/Right and Top/Bottom must be
@@ -110,10 +382,14 @@ public class QRUtils {
         }
         
 
-        g.drawImage(overly, imgX, imgY, null);
-        g.dispose();
-        return combined;
-
+        if (logoWidth == overly.getWidth() && logoHeight == overly.getHeight()) {
+            g.drawImage(overly, imgX, imgY, null);
+        } else {
+            Graphics2D scaled = (Graphics2D) g.create();
+            scaled.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            scaled.drawImage(overly, imgX, imgY, logoWidth, logoHeight, null);
+            scaled.dispose();
+        }
     }
     public static BufferedImage getOverlayImage(BufferedImage qrImage, String path) throws IOException, ImageSizeException {
         return getOverlayImage(qrImage, path,StyleConfig.getDefaultStyleConfig());
@@ -160,18 +436,69 @@ public class QRUtils {
     	//System.out.println(QRUtils.getCurrentTimeStamp()+":"+ALIAS+":-"+msg);
     }
 
+    /**
+     * Resize with bilinear steps, halving the size at most per step so that every source pixel still
+     * contributes to the result (a single bilinear step only samples 2x2 pixels per target pixel).
+     */
     private static BufferedImage resize(BufferedImage image, int width, int height) {
 		int type = image.getType() == 0? BufferedImage.TYPE_INT_ARGB : image.getType();
-		Image newImage = image.getScaledInstance(width, height, Image.SCALE_SMOOTH);
-		BufferedImage resizedImage = new BufferedImage(width, height, type);
-		Graphics2D g = resizedImage.createGraphics();
-		g.setComposite(AlphaComposite.Src);
-		g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-		g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
-		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-		g.drawImage(newImage, 0, 0, width, height, null);
-		g.dispose();
+		int stepType = image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+		BufferedImage resizedImage = image;
+		int w = image.getWidth();
+		int h = image.getHeight();
+		do {
+			w = w > width ? Math.max(w / 2, width) : width;
+			h = h > height ? Math.max(h / 2, height) : height;
+			BufferedImage step = new BufferedImage(w, h, w == width && h == height ? type : stepType);
+			Graphics2D g = step.createGraphics();
+			g.setComposite(AlphaComposite.Src);
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+			g.drawImage(resizedImage, 0, 0, w, h, null);
+			g.dispose();
+			resizedImage = step;
+		} while (w != width || h != height);
 		return resizedImage;
 	}
 
+
+    /**
+     * Create a canvas that is only ever painted with the given colors (without antialiasing).
+     * Up to 16 opaque colors give a TYPE_BYTE_BINARY image with 1 or 4 bits per pixel instead of 32,
+     * translucent colors or larger palettes fall back to TYPE_INT_RGB.
+     * @param width width of the canvas.
+     * @param height height of the canvas.
+     * @param colors colors to draw with, the first one is the initial color of an indexed canvas.
+     * @return the blank canvas.
+     */
+    public static BufferedImage createCanvas(int width, int height, Color... colors) {
+        int[] rgb = new int[16];
+        int size = 0;
+        // Blits onto an indexed raster map colors through a 32x32x32 inverse color cube,
+        // colors sharing a cell of the cube could not be told apart there.
+        Set<Integer> cells = new HashSet<>();
+        for (Color color : colors) {
+            if (color.getAlpha() != 255) {
+                return new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            }
+            int value = color.getRGB();
+            boolean known = false;
+            for (int i = 0; i < size; i++) {
+                known |= rgb[i] == value;
+            }
+            if (known) {
+                continue;
+            }
+            if (size == rgb.length || !cells.add((value >> 9 & 0x7C00) | (value >> 6 & 0x3E0) | (value >> 3 & 0x1F))) {
+                return new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            }
+            rgb[size++] = value;
+        }
+        // No 2 bit rasters and a full color map, the BMP writer can not encode anything else.
+        int bits = size <= 2 ? 1 : 4;
+        Arrays.fill(rgb, size, rgb.length, rgb[0]);
+        IndexColorModel model = new IndexColorModel(bits, 1 << bits, rgb, 0, false, -1, DataBuffer.TYPE_BYTE);
+        return new BufferedImage(width, height, BufferedImage.TYPE_BYTE_BINARY, model);
+    }
+
 }
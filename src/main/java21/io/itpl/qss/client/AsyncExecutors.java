@@ -0,0 +1,29 @@
+package io.itpl.qss.client;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Executors for the asynchronous QRGenerator API (getBinaryImageAsync(), getBase64EncodedImageAsync()).
+ * Java 21+ version of the class, loaded from META-INF/versions/21 of the multi-release jar.
+ */
+public final class AsyncExecutors {
+
+    private AsyncExecutors() {
+    }
+
+    /**
+     * @return true if newBlockingTaskExecutor() runs the tasks on virtual threads on this runtime.
+     */
+    public static boolean isVirtualThreadSupported() {
+        return true;
+    }
+
+    /**
+     * Executor for renders which block on I/O (i.e. the logo URL fetch), each task runs on a new virtual thread.
+     * @return new executor, to be shut down by the caller.
+     */
+    public static ExecutorService newBlockingTaskExecutor() {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("qss-async-", 1).factory());
+    }
+}
@@ -0,0 +1,133 @@
+package io.itpl.qss.client;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.itpl.qss.exception.InvalidQRConfigException;
+import io.itpl.qss.render.StyleConfig;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Unit test for the batch and asynchronous APIs of the QRGenerator: a failing config only fails its own result,
+ * the results keep the order of the configs, and a rejected render fails its future instead of throwing.
+ */
+public class BatchTest
+{
+    @Test
+    public void shouldFailOnlyTheInvalidConfigsOfABatch() throws Exception
+    {
+        List<QRConfig> configs = configs();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<BatchResult> results = QRGenerator.generateBatch(configs, "png", executor);
+            assertEquals(configs.size(), results.size());
+            for (int i = 0; i < configs.size(); i++) {
+                BatchResult result = results.get(i);
+                assertEquals(i, result.getIndex());
+                assertSame(configs.get(i), result.getQrConfig());
+                if (i % 2 == 1) {
+                    assertFalse(result.isSuccess());
+                    assertNull(result.getImage());
+                    assertTrue(result.getError() instanceof InvalidQRConfigException);
+                } else {
+                    assertTrue(result.isSuccess());
+                    assertArrayEquals(QRGenerator.getBinaryImage(configs.get(i), "png"), result.getImage());
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldFailOnlyTheInvalidFutures() throws Exception
+    {
+        List<QRConfig> configs = configs();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<CompletableFuture<byte[]>> futures = new ArrayList<>();
+            for (QRConfig config : configs) {
+                futures.add(new QRGenerator(config).getBinaryImageAsync("png", executor));
+            }
+            for (int i = 0; i < configs.size(); i++) {
+                if (i % 2 == 1) {
+                    try {
+                        futures.get(i).get();
+                        fail("config " + i);
+                    } catch (ExecutionException e) {
+                        assertTrue(e.getCause() instanceof InvalidQRConfigException);
+                    }
+                } else {
+                    assertArrayEquals(QRGenerator.getBinaryImage(configs.get(i), "png"), futures.get(i).get());
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldEncodeTheAsyncBase64Image() throws Exception
+    {
+        QRConfig config = configs().get(0);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            assertEquals(new QRGenerator(config).getBase64EncodedImage("png"),
+                    new QRGenerator(config).getBase64EncodedImageAsync("png", executor).get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldFailTheFutureOfARejectedRender() throws Exception
+    {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.shutdown();
+        QRGenerator generator = new QRGenerator(configs().get(0));
+        List<CompletableFuture<?>> futures = Arrays.asList(generator.getBinaryImageAsync("png", executor),
+                generator.getBase64EncodedImageAsync("png", executor));
+        for (CompletableFuture<?> future : futures) {
+            assertTrue(future.isCompletedExceptionally());
+            try {
+                future.get();
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof RejectedExecutionException);
+            }
+        }
+    }
+
+    /**
+     * Valid configs of distinct data (so the results can not be swapped) at even positions, configs with an
+     * unknown Finder shape at odd positions.
+     */
+    private static List<QRConfig> configs() throws Exception
+    {
+        List<QRConfig> configs = new ArrayList<>();
+        for (String data : Arrays.asList("one", "two", "three", "four", "five", "six")) {
+            QRConfig config = QRConfig.from("www.google.com/" + data, QRConfig.SIZE_SMALL);
+            if (configs.size() % 2 == 1) {
+                StyleConfig style = StyleConfig.getDefaultStyleConfig();
+                style.topRightFinderShape = 99;
+                config.setStyleConfig(style);
+            }
+            configs.add(config);
+        }
+        return configs;
+    }
+}
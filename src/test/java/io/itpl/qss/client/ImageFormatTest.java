@@ -0,0 +1,52 @@
+package io.itpl.qss.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Unit test for the image formats of the QRGenerator over the indexed canvas: every format ImageIO has a writer
+ * for is either written or refused (nothing written), never thrown.
+ */
+public class ImageFormatTest
+{
+    @Test
+    public void shouldWriteOrRefuseEveryFormat() throws Exception
+    {
+        QRConfig config = QRConfig.from("www.google.com", QRConfig.SIZE_SMALL);
+        Set<String> formats = new TreeSet<>();
+        for (String format : ImageIO.getWriterFormatNames()) {
+            formats.add(format.toLowerCase(Locale.ROOT));
+        }
+        for (String format : formats) {
+            QRGenerator generator = new QRGenerator(config);
+            byte[] image = generator.getBinaryImage(format);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals(format, image.length > 0, generator.writeTo(format, out));
+            assertEquals(format, image.length, out.size());
+
+            StringBuilder uri = new StringBuilder();
+            boolean written = generator.writeDataURITo(format, uri);
+            assertEquals(format, written, uri.length() > 0);
+            assertTrue(format, written || image.length == 0);
+
+            if (image.length > 0) {
+                BufferedImage read = ImageIO.read(new ByteArrayInputStream(image));
+                if (read != null) {
+                    assertEquals(format, config.getQRImageSize(), read.getWidth());
+                    assertEquals(format, config.getQRImageSize(), read.getHeight());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package io.itpl.qss.client;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Unit test for the MappedRenderCache, the segment file is reopened as after a restart.
+ */
+public class MappedRenderCacheTest
+{
+    private static final int CAPACITY = 64 * 1024;
+    /**
+     * File header and record header sizes of the segment format.
+     */
+    private static final int HEADER_SIZE = 24;
+    private static final int RECORD_HEADER_SIZE = 40;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldKeepImagesAcrossRestarts() throws IOException
+    {
+        File file = folder.newFile();
+        byte[] first = image(1, 1000);
+        byte[] second = image(2, 3000);
+        try (MappedRenderCache cache = new MappedRenderCache(file, CAPACITY)) {
+            assertTrue(cache.put(key(1), first));
+            assertTrue(cache.put(key(2), second));
+            assertArrayEquals(first, bytes(cache.get(key(1))));
+        }
+        try (MappedRenderCache cache = new MappedRenderCache(file, CAPACITY)) {
+            assertEquals(2, cache.getCount());
+            assertEquals(HEADER_SIZE + 2 * RECORD_HEADER_SIZE + 4000, cache.getSize());
+            assertArrayEquals(first, bytes(cache.get(key(1))));
+            assertArrayEquals(second, bytes(cache.get(key(2))));
+            assertNull(cache.get(key(3)));
+            assertEquals(2, cache.getHitCount());
+            assertEquals(1, cache.getMissCount());
+        }
+    }
+
+    @Test
+    public void shouldDropCorruptedAndUncommittedRecords() throws IOException
+    {
+        File file = folder.newFile();
+        try (MappedRenderCache cache = new MappedRenderCache(file, CAPACITY)) {
+            cache.put(key(1), image(1, 1000));
+            cache.put(key(2), image(2, 1000));
+            cache.put(key(3), image(3, 1000));
+        }
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            // Flip a byte of the second image, and commit only half of the third one.
+            int second = HEADER_SIZE + (RECORD_HEADER_SIZE + 1000) + RECORD_HEADER_SIZE + 10;
+            raw.seek(second);
+            int b = raw.read();
+            raw.seek(second);
+            raw.write(b ^ 0xFF);
+            raw.seek(16);
+            raw.writeLong(HEADER_SIZE + 2 * (RECORD_HEADER_SIZE + 1000) + 500);
+        }
+        try (MappedRenderCache cache = new MappedRenderCache(file, CAPACITY)) {
+            assertEquals(2, cache.getCount());
+            assertArrayEquals(image(1, 1000), bytes(cache.get(key(1))));
+            assertNull(cache.get(key(2)));
+            assertNull(cache.get(key(3)));
+            // The space of the torn record is reused.
+            assertTrue(cache.put(key(3), image(3, 1000)));
+            assertEquals(HEADER_SIZE + 3 * (RECORD_HEADER_SIZE + 1000), cache.getSize());
+        }
+    }
+
+    @Test
+    public void shouldStartANewGenerationWhenFull() throws IOException
+    {
+        File file = folder.newFile();
+        try (MappedRenderCache cache = new MappedRenderCache(file, 4096)) {
+            // Past the capacity many times over, every image is added.
+            for (int i = 1; i <= 10; i++) {
+                assertTrue(cache.put(key(i), image(i, 1500)));
+                assertArrayEquals(image(i, 1500), bytes(cache.get(key(i))));
+                assertTrue(cache.getSize() <= cache.getCapacity());
+            }
+            // Two images per generation.
+            assertEquals(4, cache.getGenerationCount());
+            assertEquals(2, cache.getCount());
+            assertNull(cache.get(key(8)));
+            // Larger than the segment.
+            assertFalse(cache.put(key(11), image(11, 4096)));
+            assertEquals(2, cache.getCount());
+        }
+        try (MappedRenderCache cache = new MappedRenderCache(file, 4096)) {
+            assertEquals(2, cache.getCount());
+            assertArrayEquals(image(9, 1500), bytes(cache.get(key(9))));
+            assertArrayEquals(image(10, 1500), bytes(cache.get(key(10))));
+        }
+    }
+
+    @Test
+    public void shouldStartANewGenerationOnceUnpinned() throws Exception
+    {
+        try (MappedRenderCache cache = new MappedRenderCache(folder.newFile(), 4096)) {
+            cache.put(key(1), image(1, 3000));
+            // The render of a miss puts its image while pinned, as QRGenerator does.
+            cache.pin();
+            ByteBuffer slice = cache.get(key(1));
+            assertFalse(cache.put(key(2), image(2, 3000)));
+            // Another thread does not start over the slice either.
+            FutureTask<Boolean> other = new FutureTask<>(() -> cache.put(key(3), image(3, 3000)));
+            new Thread(other).start();
+            assertFalse(other.get());
+            assertArrayEquals(image(1, 3000), bytes(slice.duplicate()));
+            cache.unpin();
+            assertEquals(1, cache.getGenerationCount());
+            assertEquals(0, cache.getCount());
+            assertTrue(cache.put(key(2), image(2, 3000)));
+            assertArrayEquals(image(2, 3000), bytes(cache.get(key(2))));
+        }
+    }
+
+    @Test
+    public void shouldAddAgainAfterClear() throws IOException
+    {
+        try (MappedRenderCache cache = new MappedRenderCache(folder.newFile(), 4096)) {
+            assertTrue(cache.put(key(1), image(1, 3000)));
+            cache.clear();
+            assertEquals(0, cache.getCount());
+            assertEquals(0, cache.getGenerationCount());
+            assertTrue(cache.put(key(2), image(2, 3000)));
+        }
+    }
+
+    @Test
+    public void shouldNotClearPinnedSlices() throws Exception
+    {
+        try (MappedRenderCache cache = new MappedRenderCache(folder.newFile(), CAPACITY)) {
+            cache.put(key(1), image(1, 1000));
+            cache.pin();
+            ByteBuffer slice = cache.get(key(1));
+            // A clear() and a put() of another request, which would write over the slice.
+            Thread other = new Thread(() -> {
+                cache.clear();
+                cache.put(key(2), image(2, 1000));
+            });
+            try {
+                other.start();
+                other.join(200);
+                assertTrue(other.isAlive());
+                assertArrayEquals(image(1, 1000), bytes(slice.duplicate()));
+            } finally {
+                cache.unpin();
+            }
+            other.join();
+            assertNull(cache.get(key(1)));
+            assertArrayEquals(image(2, 1000), bytes(cache.get(key(2))));
+        }
+    }
+
+    private static String key(int seed)
+    {
+        StringBuilder key = new StringBuilder();
+        while (key.length() < 64) {
+            key.append(Integer.toHexString(seed));
+        }
+        return key.substring(0, 64);
+    }
+
+    private static byte[] image(int seed, int length)
+    {
+        byte[] image = new byte[length];
+        new Random(seed).nextBytes(image);
+        return image;
+    }
+
+    private static byte[] bytes(ByteBuffer buffer)
+    {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
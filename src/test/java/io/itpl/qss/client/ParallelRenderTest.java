@@ -0,0 +1,128 @@
+package io.itpl.qss.client;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import io.itpl.qss.render.StyleConfig;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Unit test for the parallel render of the large images (see QRGenerator.setRenderPool()): the tiles must give
+ * the same image as the serial render, for every data shape and Finder shape.
+ */
+public class ParallelRenderTest
+{
+    private static final String DATA = "www.google.com";
+    /**
+     * Pixels per module of the images, over 1M pixels.
+     */
+    private static final int LARGE = 45;
+    /**
+     * Pixels per module where the Finders are painted in place instead of blitted (see QRCode).
+     */
+    private static final int HUGE = 150;
+
+    @ClassRule
+    public static TemporaryFolder folder = new TemporaryFolder();
+
+    private static ForkJoinPool pool;
+
+    @BeforeClass
+    public static void startPool()
+    {
+        // More workers than cores, so the tiles really run in any order.
+        pool = new ForkJoinPool(8);
+    }
+
+    @AfterClass
+    public static void stopPool()
+    {
+        pool.shutdown();
+    }
+
+    @Test
+    public void shouldMatchTheSerialRenderForEveryShape() throws Exception
+    {
+        for (int dataShape = StyleConfig.DATA_SHAPE_SQUARE; dataShape <= StyleConfig.DATA_SHAPE_DIAMOND_LINEAR; dataShape++) {
+            for (int finderShape = StyleConfig.FINDER_SQURE; finderShape <= StyleConfig.FINDER_OPP_ROUND_CORNERS; finderShape++) {
+                StyleConfig style = StyleConfig.getDefaultStyleConfig();
+                style.dataBlockShape = dataShape;
+                style.topLeftFinderShape = finderShape;
+                style.topRightFinderShape = finderShape;
+                style.bottomLeftFinderShape = finderShape;
+                style.finderBallShape = finderShape % 2 == 0 ? StyleConfig.BALL_DEFAULT : StyleConfig.BALL_CIRCLE;
+                style.dataColorMode = dataShape % 2 == 0 ? StyleConfig.DATA_COLOR_STANDARD : StyleConfig.DATA_COLOR_MULTICOLOR;
+                QRConfig config = QRConfig.from(DATA, LARGE);
+                config.setStyleConfig(style);
+                assertParallelMatchesSerial("data:" + dataShape + " finder:" + finderShape, config);
+            }
+        }
+    }
+
+    @Test
+    public void shouldMatchTheSerialRenderWithLogo() throws Exception
+    {
+        String logo = writeLogo().toURI().toString();
+        for (int dataShape : new int[]{StyleConfig.DATA_SHAPE_SQUARE, StyleConfig.DATA_SHAPE_ROUNDED_LINEAR}) {
+            for (boolean background : new boolean[]{false, true}) {
+                StyleConfig style = StyleConfig.getDefaultStyleConfig();
+                style.dataBlockShape = dataShape;
+                style.bDrawLogoBackground = background;
+                QRConfig config = QRConfig.from(DATA, LARGE, logo);
+                config.setStyleConfig(style);
+                assertParallelMatchesSerial("logo data:" + dataShape + " background:" + background, config);
+            }
+        }
+    }
+
+    @Test
+    public void shouldMatchTheSerialRenderWithFindersPaintedInPlace() throws Exception
+    {
+        for (int finderShape = StyleConfig.FINDER_SQURE; finderShape <= StyleConfig.FINDER_OPP_ROUND_CORNERS; finderShape++) {
+            StyleConfig style = StyleConfig.getDefaultStyleConfig();
+            style.dataBlockShape = finderShape;
+            style.topLeftFinderShape = finderShape;
+            style.topRightFinderShape = finderShape;
+            style.bottomLeftFinderShape = finderShape;
+            style.finderBallShape = finderShape % 2 == 0 ? StyleConfig.BALL_CIRCLE : StyleConfig.BALL_DEFAULT;
+            QRConfig config = QRConfig.from(DATA, HUGE);
+            config.setStyleConfig(style);
+            assertParallelMatchesSerial("in place finder:" + finderShape, config);
+        }
+    }
+
+    private static void assertParallelMatchesSerial(String message, QRConfig config) throws Exception
+    {
+        // Smaller images are never split into tiles.
+        assertTrue(message, (long) config.getQRImageSize() * config.getQRImageSize() >= 1024 * 1024);
+        QRGenerator serial = new QRGenerator(config);
+        QRGenerator parallel = new QRGenerator(config);
+        parallel.setRenderPool(pool);
+        assertArrayEquals(message, serial.getBinaryImage("png"), parallel.getBinaryImage("png"));
+    }
+
+    private static File writeLogo() throws Exception
+    {
+        BufferedImage logo = new BufferedImage(300, 300, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = logo.createGraphics();
+        g.setColor(Color.ORANGE);
+        g.fillRect(0, 0, 300, 300);
+        g.setColor(Color.BLUE);
+        g.fillOval(40, 40, 220, 220);
+        g.dispose();
+        File file = folder.newFile("logo.png");
+        ImageIO.write(logo, "png", file);
+        return file;
+    }
+}
@@ -0,0 +1,76 @@
+package io.itpl.qss.client;
+
+import static org.junit.Assert.assertEquals;
+
+import io.itpl.qss.render.StyleConfig;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Unit test for QRGenerator.writePngStripsTo(): the strips must give the pixels of writeTo("png") without a logo.
+ */
+public class PngStripsTest
+{
+    private static final String DATA = "www.google.com";
+
+    @Test
+    public void shouldMatchTheFullImageForEveryShape() throws Exception
+    {
+        for (int dataShape = StyleConfig.DATA_SHAPE_SQUARE; dataShape <= StyleConfig.DATA_SHAPE_DIAMOND_LINEAR; dataShape++) {
+            for (int finderShape = StyleConfig.FINDER_SQURE; finderShape <= StyleConfig.FINDER_OPP_ROUND_CORNERS; finderShape++) {
+                // 2 to 3 modules per strip.
+                assertStripsMatch("data:" + dataShape + " finder:" + finderShape,
+                        config(QRConfig.SIZE_SMALL, dataShape, finderShape), 25);
+            }
+        }
+    }
+
+    @Test
+    public void shouldMatchTheFullImageWithFindersPaintedInPlace() throws Exception
+    {
+        // 150 pixels per module: the 1050 pixel Finders are wider than QRCode.MAX_FINDER_IMAGE_WIDTH, the strips
+        // are just high enough to hold one. The large circles are rounded differently in a strip (see
+        // writePngStripsTo()).
+        for (int finderShape : new int[]{StyleConfig.FINDER_SQURE, StyleConfig.FINDER_ROUNDED_SQUARE,
+                StyleConfig.FINDER_HEXAGON, StyleConfig.FINDER_OPP_ROUND_CORNERS}) {
+            assertStripsMatch("in place finder:" + finderShape,
+                    config(150, StyleConfig.DATA_SHAPE_ROUNDED_BARS, finderShape), 1100);
+        }
+    }
+
+    private static QRConfig config(int qrSize, int dataShape, int finderShape) throws Exception
+    {
+        StyleConfig style = StyleConfig.getDefaultStyleConfig();
+        style.dataBlockShape = dataShape;
+        style.topLeftFinderShape = finderShape;
+        style.topRightFinderShape = finderShape;
+        style.bottomLeftFinderShape = finderShape;
+        style.finderBallShape = finderShape % 2 == 0 ? StyleConfig.BALL_DEFAULT : StyleConfig.BALL_CIRCLE;
+        QRConfig config = QRConfig.from(DATA, qrSize);
+        config.setStyleConfig(style);
+        return config;
+    }
+
+    private static void assertStripsMatch(String message, QRConfig config, int stripHeight) throws Exception
+    {
+        ByteArrayOutputStream full = new ByteArrayOutputStream();
+        new QRGenerator(config).writeTo("png", full);
+        ByteArrayOutputStream strips = new ByteArrayOutputStream();
+        new QRGenerator(config).writePngStripsTo(strips, stripHeight);
+        BufferedImage expected = ImageIO.read(new ByteArrayInputStream(full.toByteArray()));
+        BufferedImage actual = ImageIO.read(new ByteArrayInputStream(strips.toByteArray()));
+        assertEquals(message, expected.getWidth(), actual.getWidth());
+        assertEquals(message, expected.getHeight(), actual.getHeight());
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                if (expected.getRGB(x, y) != actual.getRGB(x, y)) {
+                    assertEquals(message + " at " + x + "," + y, expected.getRGB(x, y), actual.getRGB(x, y));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package io.itpl.qss.client;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import io.itpl.qss.render.StyleConfig;
+import org.junit.Test;
+
+import java.awt.Color;
+
+/**
+ * Unit test for the RenderCache keys, its LRU eviction and its use by the QRGenerator.
+ */
+public class RenderCacheTest
+{
+    @Test
+    public void shouldEvictLeastRecentlyUsed()
+    {
+        RenderCache cache = new RenderCache(100);
+        cache.put("a", new byte[40]);
+        cache.put("b", new byte[40]);
+        assertNotNull(cache.get("a"));
+        // "b" is the least recently used one now.
+        cache.put("c", new byte[40]);
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+        assertNotNull(cache.get("c"));
+        assertEquals(80, cache.getSize());
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(3, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        // Larger than the whole budget, not stored.
+        cache.put("d", new byte[101]);
+        assertNull(cache.get("d"));
+        assertEquals(2, cache.getCount());
+    }
+
+    @Test
+    public void shouldKeySameConfigsAlike() throws Exception
+    {
+        String key = RenderCache.keyOf(config(Color.BLACK), "png");
+        assertEquals(64, key.length());
+        assertEquals(key, RenderCache.keyOf(config(Color.BLACK), "PNG"));
+        assertNotEquals(key, RenderCache.keyOf(config(Color.BLACK), "jpg"));
+        assertNotEquals(key, RenderCache.keyOf(config(Color.BLUE), "png"));
+        assertNotEquals(key, RenderCache.keyOf(QRConfig.from("www.google.com", QRConfig.SIZE_MEDIUM), "png"));
+    }
+
+    @Test
+    public void shouldServeRepeatedRendersFromCache() throws Exception
+    {
+        RenderCache cache = new RenderCache(1024 * 1024);
+        QRGenerator.setRenderCache(cache);
+        try {
+            byte[] first = new QRGenerator(config(Color.BLACK)).getBinaryImage("png");
+            byte[] second = QRGenerator.getBinaryImage(config(Color.BLACK), "png");
+            assertArrayEquals(first, second);
+            assertEquals(1, cache.getHitCount());
+            assertEquals(1, cache.getMissCount());
+            assertEquals(1, cache.getCount());
+        } finally {
+            QRGenerator.setRenderCache(null);
+        }
+    }
+
+    private static QRConfig config(Color color) throws Exception
+    {
+        QRConfig config = QRConfig.from("www.google.com", QRConfig.SIZE_SMALL);
+        StyleConfig style = StyleConfig.getDefaultStyleConfig();
+        style.dataColorPrimary = color;
+        config.setStyleConfig(style);
+        config.validate();
+        return config;
+    }
+}
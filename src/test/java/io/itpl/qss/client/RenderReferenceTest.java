@@ -0,0 +1,92 @@
+package io.itpl.qss.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import io.itpl.qss.render.StyleConfig;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * Unit test for the render of the styles (see RenderPlan): every data shape, color mode and Finder shape must give
+ * the pixels of the render from before the RenderPlan, recorded as CRC32 in reference-renders.txt. The Diamond
+ * Linear renders are recorded since QRCode.diamond(), which draws the same diamond at any location.
+ * The pitches are below and above ShapeSpriteCache.MAX_SPRITE_PITCH, so the sprites and the direct paints are
+ * both checked.
+ */
+public class RenderReferenceTest
+{
+    private static final String DATA = "www.google.com";
+
+    @Test
+    public void shouldMatchTheReferenceRenders() throws Exception
+    {
+        int count = 0;
+        try (InputStream in = RenderReferenceTest.class.getResourceAsStream("reference-renders.txt")) {
+            assertNotNull(in);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.US_ASCII));
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                if (line.startsWith("#") || line.trim().isEmpty()) {
+                    continue;
+                }
+                String[] fields = line.trim().split(" ");
+                int qrSize = Integer.parseInt(fields[0]);
+                int dataShape = Integer.parseInt(fields[1]);
+                int colorMode = Integer.parseInt(fields[2]);
+                int finderShape = Integer.parseInt(fields[3]);
+                String message = "size:" + qrSize + " data:" + dataShape + " colors:" + colorMode + " finder:" + finderShape;
+
+                BufferedImage image = render(qrSize, dataShape, colorMode, finderShape);
+                assertEquals(message, Integer.parseInt(fields[4]), image.getWidth());
+                assertEquals(message, fields[5], Long.toHexString(crc(image)));
+                count++;
+            }
+        }
+        // Every data shape, color mode and Finder shape at both pitches.
+        assertEquals(2 * 6 * 2 * 5, count);
+    }
+
+    private static BufferedImage render(int qrSize, int dataShape, int colorMode, int finderShape) throws Exception
+    {
+        StyleConfig style = StyleConfig.getDefaultStyleConfig();
+        style.dataBlockShape = dataShape;
+        style.dataColorMode = colorMode;
+        style.topLeftFinderShape = finderShape;
+        style.topRightFinderShape = finderShape;
+        style.bottomLeftFinderShape = finderShape;
+        style.finderBallShape = finderShape % 2 == 0 ? StyleConfig.BALL_DEFAULT : StyleConfig.BALL_CIRCLE;
+        QRConfig config = QRConfig.from(DATA, qrSize);
+        config.setStyleConfig(style);
+        return ImageIO.read(new ByteArrayInputStream(new QRGenerator(config).getBinaryImage("png")));
+    }
+
+    /**
+     * @return CRC32 of the ARGB pixels, row by row, most significant byte first.
+     */
+    private static long crc(BufferedImage image)
+    {
+        int width = image.getWidth();
+        int[] row = new int[width];
+        byte[] bytes = new byte[4 * width];
+        CRC32 crc = new CRC32();
+        for (int y = 0; y < image.getHeight(); y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (int x = 0; x < width; x++) {
+                bytes[4 * x] = (byte) (row[x] >>> 24);
+                bytes[4 * x + 1] = (byte) (row[x] >>> 16);
+                bytes[4 * x + 2] = (byte) (row[x] >>> 8);
+                bytes[4 * x + 3] = (byte) row[x];
+            }
+            crc.update(bytes, 0, bytes.length);
+        }
+        return crc.getValue();
+    }
+}
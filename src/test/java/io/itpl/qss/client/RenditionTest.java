@@ -0,0 +1,49 @@
+package io.itpl.qss.client;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import io.itpl.qss.encoder.QREncoder;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Unit test for the sizes of the Renditions and their generation in one call.
+ */
+public class RenditionTest
+{
+    private static final String DATA = "www.google.com";
+
+    @Test
+    public void shouldFitThePixelSize()
+    {
+        int modules = QREncoder.getModuleCount(2);
+        for (int pixels : new int[]{1, 100, 200, 800, 2400}) {
+            int size = Rendition.ofPixels(pixels, "png").getQRSize(2);
+            int width = modules * size;
+            assertTrue(size == 1 || width + Math.round(width * 0.1f) <= pixels);
+            width += modules;
+            assertTrue(width + Math.round(width * 0.1f) > pixels);
+        }
+        assertEquals(QRConfig.SIZE_MEDIUM, Rendition.ofSize(QRConfig.SIZE_MEDIUM, "png").getQRSize(2));
+    }
+
+    @Test
+    public void shouldMatchTheSingleRenditions() throws Exception
+    {
+        QRConfig config = QRConfig.from(DATA, QRConfig.SIZE_SMALL);
+        List<Rendition> renditions = Arrays.asList(Rendition.ofPixels(200, "png"),
+                Rendition.ofSize(QRConfig.SIZE_MEDIUM, "png"));
+        List<BatchResult> results = QRGenerator.generateRenditions(config, renditions);
+        assertEquals(2, results.size());
+        for (int i = 0; i < 2; i++) {
+            BatchResult result = results.get(i);
+            assertTrue(result.isSuccess());
+            assertArrayEquals(new QRGenerator(result.getQrConfig()).getBinaryImage("png"), result.getImage());
+        }
+        assertTrue(results.get(0).getQrConfig().getQRImageSize() <= 200);
+    }
+}
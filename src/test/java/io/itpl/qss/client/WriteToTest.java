@@ -0,0 +1,171 @@
+package io.itpl.qss.client;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Unit test for the streaming outputs of the QRGenerator: writeTo(), writeBase64To() and writeDataURITo() must
+ * give the bytes of getBinaryImage() into every destination, with and without the render caches.
+ */
+public class WriteToTest
+{
+    /**
+     * PNG goes through the PngWriter, BMP through ImageIO.
+     */
+    private static final String[] FORMATS = {"png", "bmp"};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void disableCaches()
+    {
+        QRGenerator.setRenderCache(null);
+        QRGenerator.setMappedRenderCache(null);
+    }
+
+    @Test
+    public void shouldWriteTheBinaryImage() throws Exception
+    {
+        for (String format : FORMATS) {
+            assertWritesMatch(format, expected(format));
+        }
+    }
+
+    @Test
+    public void shouldWriteTheCachedImage() throws Exception
+    {
+        QRGenerator.setRenderCache(new RenderCache(16L * 1024 * 1024));
+        for (String format : FORMATS) {
+            byte[] expected = expected(format);
+            // Miss, then hit.
+            assertWritesMatch(format, expected);
+            assertWritesMatch(format, expected);
+        }
+    }
+
+    @Test
+    public void shouldWriteTheMappedImage() throws Exception
+    {
+        try (MappedRenderCache cache = new MappedRenderCache(folder.newFile(), 4 * 1024 * 1024)) {
+            QRGenerator.setMappedRenderCache(cache);
+            for (String format : FORMATS) {
+                byte[] expected = expected(format);
+                assertWritesMatch(format, expected);
+                assertWritesMatch(format, expected);
+            }
+        }
+    }
+
+    @Test
+    public void shouldKeepThePositionOfATooSmallBuffer() throws Exception
+    {
+        assertTooSmallBufferUnchanged();
+        QRGenerator.setRenderCache(new RenderCache(16L * 1024 * 1024));
+        // Miss, then hit.
+        assertTooSmallBufferUnchanged();
+        assertTooSmallBufferUnchanged();
+    }
+
+    private static void assertTooSmallBufferUnchanged() throws Exception
+    {
+        for (String format : FORMATS) {
+            for (ByteBuffer buffer : new ByteBuffer[]{ByteBuffer.allocate(200), ByteBuffer.allocateDirect(200)}) {
+                buffer.position(10);
+                try {
+                    generator().writeTo(format, buffer);
+                    fail(format);
+                } catch (IOException e) {
+                    assertEquals(format, 10, buffer.position());
+                    assertEquals(format, 200, buffer.limit());
+                }
+            }
+        }
+    }
+
+    /**
+     * The reference image, rendered with the caches disabled.
+     */
+    private static byte[] expected(String format) throws Exception
+    {
+        RenderCache cache = QRGenerator.getRenderCache();
+        MappedRenderCache mapped = QRGenerator.getMappedRenderCache();
+        QRGenerator.setRenderCache(null);
+        QRGenerator.setMappedRenderCache(null);
+        try {
+            byte[] image = generator().getBinaryImage(format);
+            assertTrue(format, image.length > 0);
+            return image;
+        } finally {
+            QRGenerator.setRenderCache(cache);
+            QRGenerator.setMappedRenderCache(mapped);
+        }
+    }
+
+    private static void assertWritesMatch(String format, byte[] expected) throws Exception
+    {
+        assertArrayEquals(format, expected, generator().getBinaryImage(format));
+        assertArrayEquals(format, expected, QRGenerator.getBinaryImage(config(), format));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(format, generator().writeTo(format, out));
+        assertArrayEquals(format, expected, out.toByteArray());
+
+        ByteArrayOutputStream channel = new ByteArrayOutputStream();
+        assertTrue(format, generator().writeTo(format, Channels.newChannel(channel)));
+        assertArrayEquals(format, expected, channel.toByteArray());
+
+        for (ByteBuffer buffer : new ByteBuffer[]{ByteBuffer.allocate(expected.length + 20),
+                ByteBuffer.allocateDirect(expected.length + 20)}) {
+            buffer.position(20);
+            assertEquals(format, expected.length, generator().writeTo(format, buffer));
+            assertEquals(format, expected.length + 20, buffer.position());
+            buffer.position(20);
+            byte[] written = new byte[expected.length];
+            buffer.get(written);
+            assertArrayEquals(format, expected, written);
+        }
+
+        String base64 = Base64.getEncoder().encodeToString(expected);
+        ByteArrayOutputStream base64Out = new ByteArrayOutputStream();
+        assertTrue(format, generator().writeBase64To(format, base64Out));
+        assertEquals(format, base64, new String(base64Out.toByteArray(), StandardCharsets.US_ASCII));
+        StringBuilder base64Text = new StringBuilder("text:");
+        assertTrue(format, generator().writeBase64To(format, base64Text));
+        assertEquals(format, "text:" + base64, base64Text.toString());
+        assertEquals(format, base64, generator().getBase64EncodedImage(format));
+
+        String uri = "data:image/" + format + ";base64," + base64;
+        ByteArrayOutputStream uriOut = new ByteArrayOutputStream();
+        assertTrue(format, generator().writeDataURITo(format, uriOut));
+        assertEquals(format, uri, new String(uriOut.toByteArray(), StandardCharsets.US_ASCII));
+        StringWriter uriWriter = new StringWriter();
+        assertTrue(format, generator().writeDataURITo(format, uriWriter));
+        assertEquals(format, uri, uriWriter.toString());
+    }
+
+    private static QRGenerator generator() throws Exception
+    {
+        return new QRGenerator(config());
+    }
+
+    private static QRConfig config() throws Exception
+    {
+        return QRConfig.from("www.google.com", QRConfig.SIZE_SMALL);
+    }
+}
@@ -0,0 +1,54 @@
+package io.itpl.qss.encoder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import io.itpl.qss.client.QRConfig;
+import io.itpl.qss.client.QRGenerator;
+import io.itpl.qss.exception.QREncoderException;
+import io.itpl.qss.render.StyleConfig;
+import org.junit.Test;
+
+/**
+ * Unit test for the EncodedSymbol, rendered again at other sizes and styles without encoding.
+ */
+public class EncodedSymbolTest
+{
+    private static final String DATA = "www.google.com";
+
+    @Test
+    public void shouldHoldTheEncodedModules() throws Exception
+    {
+        EncodedSymbol symbol = EncodedSymbol.encode(DATA, 2, 2);
+        assertEquals(2, symbol.getVersion());
+        assertEquals(ErrorCorrectionLevel.Q, symbol.getErrorCorrectionLevel());
+        assertEquals(QREncoder.getModuleCount(2), symbol.getModuleCount());
+        assertTrue(symbol.getMaskPattern() >= 0 && symbol.getMaskPattern() < 8);
+        QREncoder encoder = new QREncoder(2, 250, 2);
+        encoder.encodeQRData(DATA);
+        assertEquals(encoder.getModuleMatrix(), symbol.getModuleMatrix());
+    }
+
+    @Test
+    public void shouldRenderOneSymbolAtAnySize() throws Exception
+    {
+        EncodedSymbol symbol = QRGenerator.encode(QRConfig.from(DATA, QRConfig.SIZE_SMALL));
+        for (int size : new int[]{QRConfig.SIZE_SMALL, QRConfig.SIZE_MEDIUM}) {
+            QRConfig config = QRConfig.from(DATA, size);
+            StyleConfig style = StyleConfig.getDefaultStyleConfig();
+            style.dataBlockShape = StyleConfig.DATA_SHAPE_CIRCLE;
+            config.setStyleConfig(style);
+            assertArrayEquals(new QRGenerator(config).getBinaryImage("png"),
+                    new QRGenerator(config, symbol).getBinaryImage("png"));
+        }
+    }
+
+    @Test(expected = QREncoderException.class)
+    public void shouldRejectTheSymbolOfOtherData() throws Exception
+    {
+        EncodedSymbol symbol = QRGenerator.encode(QRConfig.from(DATA, QRConfig.SIZE_SMALL));
+        new QRGenerator(QRConfig.from("www.example.com", QRConfig.SIZE_SMALL), symbol);
+    }
+}
@@ -0,0 +1,61 @@
+package io.itpl.qss.encoder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Unit test for the bit-packed ModuleMatrix.
+ */
+public class ModuleMatrixTest
+{
+    @Test
+    public void shouldMatchUnpackedData()
+    {
+        // 177 modules per side spans three words per row.
+        byte[][] data = new byte[177][177];
+        Random random = new Random(7);
+        for (int x = 0; x < data.length; x++) {
+            for (int y = 0; y < data.length; y++) {
+                data[x][y] = (byte) random.nextInt(2);
+            }
+        }
+        ModuleMatrix matrix = ModuleMatrix.from(data);
+        assertEquals(177, matrix.getWidth());
+        assertEquals(3, matrix.getWordsPerRow());
+        assertArrayEquals(data, matrix.toArray());
+        assertFalse(matrix.get(-1, 0));
+        assertFalse(matrix.get(0, 177));
+    }
+
+    @Test
+    public void shouldAgreeOnNeighbours()
+    {
+        byte[][] data = new byte[130][130];
+        Random random = new Random(11);
+        for (int x = 0; x < data.length; x++) {
+            for (int y = 0; y < data.length; y++) {
+                data[x][y] = (byte) random.nextInt(2);
+            }
+        }
+        ModuleMatrix matrix = ModuleMatrix.from(data);
+        for (int y = 0; y < data.length; y++) {
+            for (int x = 0; x < data.length; x++) {
+                int code = matrix.getNeighbours(x, y);
+                int word = x >>> 6;
+                long bit = 1L << x;
+                assertEquals((code & ModuleMatrix.NEIGHBOUR_UP) != 0, (matrix.getUpNeighbours(y, word) & bit) != 0);
+                assertEquals((code & ModuleMatrix.NEIGHBOUR_DOWN) != 0, (matrix.getDownNeighbours(y, word) & bit) != 0);
+                assertEquals((code & ModuleMatrix.NEIGHBOUR_LEFT) != 0, (matrix.getLeftNeighbours(y, word) & bit) != 0);
+                assertEquals((code & ModuleMatrix.NEIGHBOUR_RIGHT) != 0, (matrix.getRightNeighbours(y, word) & bit) != 0);
+                assertEquals(x > 0 && data[x - 1][y] == 1, (code & ModuleMatrix.NEIGHBOUR_LEFT) != 0);
+            }
+        }
+        assertTrue(matrix.equals(ModuleMatrix.from(matrix.toArray())));
+    }
+}
@@ -0,0 +1,128 @@
+package io.itpl.qss.render;
+
+import static org.junit.Assert.assertEquals;
+
+import io.itpl.qss.encoder.ModuleMatrix;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Unit test for the DataBlockMatrix: the location type of every neighbour code, at the edges of the matrix and
+ * of its 64 module words, and next to the skipped (Finder) modules.
+ */
+public class DataBlockMatrixTest
+{
+    /**
+     * Location type of each neighbour code, up (1), down (2), left (4) and right (8).
+     */
+    private static final int[] EXPECTED = {
+            QRCode.BLOCK_ISOLATED,              // none
+            QRCode.BLOCK_BOTTOM_END,            // up
+            QRCode.BLOCK_TOP_END,               // down
+            QRCode.BLOCK_MID,                   // up down
+            QRCode.BLOCK_RIGHT_END,             // left
+            QRCode.BLOCK_CORNER_BOTTOM_RIGHT,   // left up
+            QRCode.BLOCK_CORNER_TOP_RIGHT,      // left down
+            QRCode.BLOCK_MID,                   // left up down
+            QRCode.BLOCK_LEFT_END,              // right
+            QRCode.BLOCK_CORNER_BOTTOM_LEFT,    // right up
+            QRCode.BLOCK_CORNER_TOP_LEFT,       // right down
+            QRCode.BLOCK_MID,                   // right up down
+            QRCode.BLOCK_MID,                   // left right
+            QRCode.BLOCK_MID,                   // left right up
+            QRCode.BLOCK_MID,                   // left right down
+            QRCode.BLOCK_MID,                   // all
+    };
+
+    @Test
+    public void shouldClassifyEveryNeighbourCode()
+    {
+        for (int code = 0; code < 16; code++) {
+            // The diagonal modules are no neighbours.
+            for (boolean diagonals : new boolean[]{false, true}) {
+                ModuleMatrix.Builder builder = new ModuleMatrix.Builder(3).set(1, 1);
+                if ((code & ModuleMatrix.NEIGHBOUR_UP) != 0) {
+                    builder.set(1, 0);
+                }
+                if ((code & ModuleMatrix.NEIGHBOUR_DOWN) != 0) {
+                    builder.set(1, 2);
+                }
+                if ((code & ModuleMatrix.NEIGHBOUR_LEFT) != 0) {
+                    builder.set(0, 1);
+                }
+                if ((code & ModuleMatrix.NEIGHBOUR_RIGHT) != 0) {
+                    builder.set(2, 1);
+                }
+                if (diagonals) {
+                    builder.set(0, 0).set(2, 0).set(0, 2).set(2, 2);
+                }
+                DataBlockMatrix blocks = DataBlockMatrix.classify(builder.build(), null);
+                assertEquals("code " + code + " diagonals " + diagonals, EXPECTED[code], blocks.get(1, 1));
+            }
+        }
+    }
+
+    @Test
+    public void shouldTreatTheOutsideAsLight()
+    {
+        // Across a word boundary, fully Dark.
+        int width = 65;
+        DataBlockMatrix blocks = DataBlockMatrix.classify(new ModuleMatrix.Builder(width).setRegion(0, 0, width, width).build(), null);
+        assertEquals(QRCode.BLOCK_CORNER_TOP_LEFT, blocks.get(0, 0));
+        assertEquals(QRCode.BLOCK_CORNER_TOP_RIGHT, blocks.get(width - 1, 0));
+        assertEquals(QRCode.BLOCK_CORNER_BOTTOM_LEFT, blocks.get(0, width - 1));
+        assertEquals(QRCode.BLOCK_CORNER_BOTTOM_RIGHT, blocks.get(width - 1, width - 1));
+        assertEquals(QRCode.BLOCK_MID, blocks.get(63, 0));
+        assertEquals(QRCode.BLOCK_MID, blocks.get(64, 30));
+
+        // A single Dark column and row along the edges.
+        ModuleMatrix edges = new ModuleMatrix.Builder(width).setRegion(width - 1, 0, 1, width).setRegion(0, width - 1, width, 1).build();
+        blocks = DataBlockMatrix.classify(edges, null);
+        assertEquals(QRCode.BLOCK_TOP_END, blocks.get(width - 1, 0));
+        assertEquals(QRCode.BLOCK_MID, blocks.get(width - 1, 1));
+        assertEquals(QRCode.BLOCK_LEFT_END, blocks.get(0, width - 1));
+        assertEquals(QRCode.BLOCK_CORNER_BOTTOM_RIGHT, blocks.get(width - 1, width - 1));
+        assertEquals(DataBlockMatrix.BLOCK_NONE, blocks.get(0, 0));
+    }
+
+    @Test
+    public void shouldSkipTheFinderModules()
+    {
+        // |1 1 1 1 0| with the first two modules in the Finder.
+        ModuleMatrix modules = new ModuleMatrix.Builder(5).setRegion(0, 0, 4, 1).build();
+        ModuleMatrix skip = new ModuleMatrix.Builder(5).setRegion(0, 0, 2, 2).build();
+        DataBlockMatrix blocks = DataBlockMatrix.classify(modules, skip);
+        assertEquals(DataBlockMatrix.BLOCK_NONE, blocks.get(0, 0));
+        assertEquals(DataBlockMatrix.BLOCK_NONE, blocks.get(1, 0));
+        // The Finder module is still a neighbour of the data module next to it.
+        assertEquals(QRCode.BLOCK_MID, blocks.get(2, 0));
+        assertEquals(QRCode.BLOCK_RIGHT_END, blocks.get(3, 0));
+    }
+
+    @Test
+    public void shouldMatchTheNeighboursOfEveryModule()
+    {
+        // Three words per row, with a skipped region across the first word boundary.
+        int width = 130;
+        Random random = new Random(3);
+        ModuleMatrix.Builder builder = new ModuleMatrix.Builder(width);
+        for (int y = 0; y < width; y++) {
+            for (int x = 0; x < width; x++) {
+                if (random.nextBoolean()) {
+                    builder.set(x, y);
+                }
+            }
+        }
+        ModuleMatrix modules = builder.build();
+        ModuleMatrix skip = new ModuleMatrix.Builder(width).setRegion(60, 10, 8, 8).setRegion(0, 0, 7, 7).build();
+        DataBlockMatrix blocks = DataBlockMatrix.classify(modules, skip);
+        for (int y = 0; y < width; y++) {
+            for (int x = 0; x < width; x++) {
+                int expected = modules.get(x, y) && !skip.get(x, y)
+                        ? EXPECTED[modules.getNeighbours(x, y)] : DataBlockMatrix.BLOCK_NONE;
+                assertEquals(x + "," + y, expected, blocks.get(x, y));
+            }
+        }
+    }
+}
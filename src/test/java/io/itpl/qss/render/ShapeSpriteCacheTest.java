@@ -0,0 +1,150 @@
+package io.itpl.qss.render;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import io.itpl.qss.utils.QRUtils;
+import org.junit.After;
+import org.junit.Test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unit test for the ShapeSpriteCache: the blitted sprites must give the pixels of the shapes painted directly,
+ * and the cache must stay within its bytes, evicting the least recently used sprites.
+ */
+public class ShapeSpriteCacheTest
+{
+    private static final String DATA = "www.google.com";
+    private static final int VERSION = 2;
+    /**
+     * Not a data shape, so the sprites of the renders are not mixed in.
+     */
+    private static final int TEST_SHAPE = 63;
+
+    @After
+    public void clearSprites()
+    {
+        ShapeSpriteCache.clear();
+    }
+
+    /**
+     * Pitches 13 and 26 are left out: their arcs pass exactly through pixel centres, which Java2D fills or not
+     * depending on the distance from the origin, so the direct paint itself differs from one module to the other.
+     */
+    @Test
+    public void shouldMatchTheDirectPaint() throws Exception
+    {
+        int[] shapes = {StyleConfig.DATA_SHAPE_CIRCLE, StyleConfig.DATA_SHAPE_OVAL,
+                StyleConfig.DATA_SHAPE_ROUNDED_LINEAR, StyleConfig.DATA_SHAPE_DIAMOND_LINEAR};
+        for (int shape : shapes) {
+            for (int colorMode : new int[]{StyleConfig.DATA_COLOR_STANDARD, StyleConfig.DATA_COLOR_MULTICOLOR}) {
+                for (int pitch : new int[]{1, 3, 10, 33, ShapeSpriteCache.MAX_SPRITE_PITCH}) {
+                    StyleConfig style = StyleConfig.getDefaultStyleConfig();
+                    style.dataBlockShape = shape;
+                    style.dataColorMode = colorMode;
+                    QRCode code = new QRCode(DATA, VERSION, 25 * pitch, 0, style);
+                    for (boolean indexed : new boolean[]{true, false}) {
+                        String message = "data:" + shape + " colors:" + colorMode + " pitch:" + pitch + " indexed:" + indexed;
+                        assertSamePixels(message, paint(code, indexed, false), paint(code, indexed, true));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void shouldEvictTheLeastRecentlyUsedSprites()
+    {
+        int pitch = ShapeSpriteCache.MAX_SPRITE_PITCH;
+        long spriteBytes = 4L * (3 * pitch + 2) * (pitch + 2);
+        Graphics2D g = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB).createGraphics();
+        AtomicInteger renders = new AtomicInteger();
+        ShapeSpriteCache.Painter painter = (sg, block, x, y, size) -> {
+            renders.incrementAndGet();
+            sg.fillRect(x, y, size, size);
+        };
+        Color used = new Color(1, 2, 3);
+        ShapeSpriteCache.draw(g, TEST_SHAPE, QRCode.BLOCK_ISOLATED, pitch, used, 0, 0, painter);
+        int overflow = (int) (2 * ShapeSpriteCache.MAX_BYTES / spriteBytes);
+        for (int i = 0; i < overflow; i++) {
+            ShapeSpriteCache.draw(g, TEST_SHAPE, QRCode.BLOCK_ISOLATED, pitch, new Color(0x100000 + i), 0, 0, painter);
+            ShapeSpriteCache.draw(g, TEST_SHAPE, QRCode.BLOCK_ISOLATED, pitch, used, 0, 0, painter);
+            assertTrue(ShapeSpriteCache.getSize() <= ShapeSpriteCache.MAX_BYTES);
+        }
+        g.dispose();
+        // Every sprite rendered once: the one in use was never evicted.
+        assertEquals(overflow + 1, renders.get());
+        // Only as many evicted as needed.
+        assertTrue(ShapeSpriteCache.getSize() > ShapeSpriteCache.MAX_BYTES - spriteBytes);
+    }
+
+    @Test
+    public void shouldCountARacedSpriteOnce() throws Exception
+    {
+        int pitch = 20;
+        long spriteBytes = 4L * (3 * pitch + 2) * (pitch + 2);
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> draws = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                draws.add(executor.submit(() -> {
+                    start.await();
+                    Graphics2D g = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB).createGraphics();
+                    ShapeSpriteCache.draw(g, TEST_SHAPE, QRCode.BLOCK_ISOLATED, pitch, Color.RED, 0, 0,
+                            (sg, block, x, y, size) -> sg.fillRect(x, y, size, size));
+                    g.dispose();
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> draw : draws) {
+                draw.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(spriteBytes, ShapeSpriteCache.getSize());
+    }
+
+    private static BufferedImage paint(QRCode code, boolean indexed, boolean sprites)
+    {
+        StyleSnapshot style = code.getStyle();
+        int size = code.getModuleMatrix().getWidth() * code.getPitch();
+        BufferedImage image = indexed
+                ? QRUtils.createCanvas(size, size, style.getPalette())
+                : new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = QRCode.of(image);
+        g.setColor(style.backgroundColor);
+        g.fillRect(0, 0, size, size);
+        if (sprites) {
+            code.getPlan().paintData(code, g);
+        } else {
+            code.getPlan().paintDataDirect(code, g);
+        }
+        g.dispose();
+        return image;
+    }
+
+    private static void assertSamePixels(String message, BufferedImage expected, BufferedImage actual)
+    {
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                if (expected.getRGB(x, y) != actual.getRGB(x, y)) {
+                    assertEquals(message + " at " + x + "," + y, expected.getRGB(x, y), actual.getRGB(x, y));
+                }
+            }
+        }
+    }
+}
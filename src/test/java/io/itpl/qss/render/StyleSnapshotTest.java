@@ -0,0 +1,73 @@
+package io.itpl.qss.render;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import io.itpl.qss.client.QRConfig;
+import org.junit.Test;
+
+import java.awt.Color;
+
+/**
+ * Unit test for the StyleSnapshot builder, its fingerprint and its independence from the StyleConfig, and for the
+ * frozen style of a QRConfig.
+ */
+public class StyleSnapshotTest
+{
+    @Test
+    public void shouldFingerprintEqualStylesAlike()
+    {
+        StyleSnapshot frozen = StyleConfig.getDefaultStyleConfig().freeze();
+        StyleSnapshot built = StyleSnapshot.builder().build();
+        assertEquals(frozen, built);
+        assertEquals(frozen.getFingerprint(), built.getFingerprint());
+        assertEquals(frozen.hashCode(), built.hashCode());
+
+        StyleSnapshot blue = built.toBuilder().dataColorPrimary(Color.BLUE).build();
+        assertNotEquals(built, blue);
+        assertNotEquals(built.getFingerprint(), blue.getFingerprint());
+        StyleSnapshot pentagon = built.toBuilder().faceCount(5).build();
+        assertNotEquals(built.getFingerprint(), pentagon.getFingerprint());
+    }
+
+    @Test
+    public void shouldNotFollowChangesOfTheConfig()
+    {
+        StyleConfig style = StyleConfig.getDefaultStyleConfig();
+        StyleSnapshot frozen = style.freeze();
+        style.dataBlockShape = StyleConfig.DATA_SHAPE_CIRCLE;
+        style.faceCount = 8;
+        assertEquals(StyleConfig.DATA_SHAPE_ROUNDED_BARS, frozen.dataBlockShape);
+        assertEquals(6, frozen.faceCount);
+        assertEquals(style.freeze(), StyleSnapshot.builder(style).build());
+        assertEquals(style.freeze(), style.freeze().toStyleConfig().freeze());
+    }
+
+    @Test
+    public void shouldKeepTheFrozenStyleOfAConfig() throws Exception
+    {
+        QRConfig config = QRConfig.from("www.google.com", QRConfig.SIZE_SMALL);
+        StyleConfig style = StyleConfig.getDefaultStyleConfig();
+        style.dataBlockShape = StyleConfig.DATA_SHAPE_CIRCLE;
+        StyleSnapshot frozen = style.freeze();
+        config.setStyle(frozen);
+        assertNull(config.getStyleConfig());
+
+        StyleConfig copy = config.toStyleConfig();
+        copy.dataBlockShape = StyleConfig.DATA_SHAPE_OVAL;
+        // Neither the copy nor the getters change the config.
+        assertSame(frozen, config.getStyle());
+        assertNull(config.getStyleConfig());
+        config.setStyleConfig(copy);
+        assertSame(copy, config.getStyleConfig());
+        assertEquals(StyleConfig.DATA_SHAPE_OVAL, config.getStyle().dataBlockShape);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectLessThanThreeFaces()
+    {
+        StyleSnapshot.builder().faceCount(2);
+    }
+}
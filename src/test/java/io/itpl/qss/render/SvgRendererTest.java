@@ -0,0 +1,195 @@
+package io.itpl.qss.render;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import io.itpl.qss.encoder.ModuleMatrix;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.awt.Color;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit test for the SvgRenderer: the documents are parsed back, then the paths and their colors are checked.
+ */
+public class SvgRendererTest
+{
+    private static final String SVG_NS = "http://www.w3.org/2000/svg";
+    private static final String XLINK_NS = "http://www.w3.org/1999/xlink";
+    private static final int WIDTH = 21;
+
+    @Test
+    public void shouldDrawEveryFinderAndBallShape() throws Exception
+    {
+        for (int finderShape = StyleConfig.FINDER_SQURE; finderShape <= StyleConfig.FINDER_OPP_ROUND_CORNERS; finderShape++) {
+            for (int ballShape : new int[]{StyleConfig.BALL_DEFAULT, StyleConfig.BALL_CIRCLE}) {
+                String message = "finder:" + finderShape + " ball:" + ballShape;
+                StyleConfig style = style(StyleConfig.DATA_SHAPE_SQUARE, StyleConfig.DATA_COLOR_STANDARD);
+                style.topLeftFinderShape = finderShape;
+                style.topRightFinderShape = finderShape;
+                style.bottomLeftFinderShape = finderShape;
+                style.finderBallShape = ballShape;
+                Document svg = parse(new SvgRenderer(matrix(), style).toSvg(231, 2));
+
+                List<Element> paths = elements(svg, "path");
+                // Frame and ball of each Finder, then the data.
+                assertEquals(message, 7, paths.size());
+                for (int finder = 0; finder < 3; finder++) {
+                    Element frame = paths.get(2 * finder);
+                    Element ball = paths.get(2 * finder + 1);
+                    assertEquals(message, "#ff0000", frame.getAttribute("fill"));
+                    assertEquals(message, "evenodd", frame.getAttribute("fill-rule"));
+                    assertEquals(message, 2, count(frame.getAttribute("d"), 'z'));
+                    assertEquals(message, "#0000ff", ball.getAttribute("fill"));
+                    assertEquals(message, 1, count(ball.getAttribute("d"), 'z'));
+                    boolean roundBall = finderShape == StyleConfig.FINDER_CIRCLE
+                            || finderShape == StyleConfig.FINDER_ROUNDED_SQUARE && ballShape == StyleConfig.BALL_CIRCLE;
+                    if (roundBall) {
+                        assertTrue(message, ball.getAttribute("d").contains("a1.5 1.5 0 1 1 3 0"));
+                    }
+                }
+                assertEquals(message, "#000000", paths.get(6).getAttribute("fill"));
+            }
+        }
+    }
+
+    @Test
+    public void shouldDrawEveryDataShapeInOnePathPerColor() throws Exception
+    {
+        for (int dataShape = StyleConfig.DATA_SHAPE_SQUARE; dataShape <= StyleConfig.DATA_SHAPE_DIAMOND_LINEAR; dataShape++) {
+            for (int colorMode : new int[]{StyleConfig.DATA_COLOR_STANDARD, StyleConfig.DATA_COLOR_MULTICOLOR}) {
+                String message = "data:" + dataShape + " colors:" + colorMode;
+                Document svg = parse(new SvgRenderer(matrix(), style(dataShape, colorMode)).toSvg(231, 2));
+                List<Element> paths = elements(svg, "path");
+                // The linear shapes are drawn in dataColorPrimary only.
+                boolean twoColors = colorMode == StyleConfig.DATA_COLOR_MULTICOLOR
+                        && dataShape != StyleConfig.DATA_SHAPE_ROUNDED_LINEAR && dataShape != StyleConfig.DATA_SHAPE_DIAMOND_LINEAR;
+                assertEquals(message, twoColors ? 8 : 7, paths.size());
+                assertEquals(message, "#000000", paths.get(6).getAttribute("fill"));
+                if (twoColors) {
+                    assertEquals(message, "#00ff00", paths.get(7).getAttribute("fill"));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void shouldMergeSquareModulesIntoRuns() throws Exception
+    {
+        Document svg = parse(new SvgRenderer(matrix(),
+                style(StyleConfig.DATA_SHAPE_SQUARE, StyleConfig.DATA_COLOR_MULTICOLOR)).toSvg(231, 2));
+        List<Element> paths = elements(svg, "path");
+        assertEquals(8, paths.size());
+        // The run is the first Dark module of its columns (odd count, dataColorSecondary), the single module below
+        // is the second one of its column.
+        assertEquals("M8 14h1v1h-1z", paths.get(6).getAttribute("d"));
+        assertEquals("M8 10h5v1h-5z", paths.get(7).getAttribute("d"));
+
+        Element svgElement = svg.getDocumentElement();
+        assertEquals("231", svgElement.getAttribute("width"));
+        assertEquals("-2 -2 25 25", svgElement.getAttribute("viewBox"));
+        Element background = elements(svg, "rect").get(0);
+        assertEquals("#ffffff", background.getAttribute("fill"));
+    }
+
+    @Test
+    public void shouldEscapeTheLogoURL() throws Exception
+    {
+        String url = "http://example.com/logo.png?a=1&b=\"2\"&c=<3>";
+        StyleConfig style = style(StyleConfig.DATA_SHAPE_SQUARE, StyleConfig.DATA_COLOR_STANDARD);
+        style.bDrawLogoBackground = true;
+        style.logoBackgroundColor = new Color(165, 197, 100, 51);
+        SvgRenderer renderer = new SvgRenderer(matrix(), style);
+        renderer.setLogo(url, 5, 4);
+        Document svg = parse(renderer.toSvg(231, 2));
+
+        List<Element> images = elements(svg, "image");
+        assertEquals(1, images.size());
+        Element image = images.get(0);
+        assertEquals(url, image.getAttributeNS(XLINK_NS, "href"));
+        assertEquals("8", image.getAttribute("x"));
+        assertEquals("8.5", image.getAttribute("y"));
+        assertEquals("5", image.getAttribute("width"));
+        assertEquals("4", image.getAttribute("height"));
+
+        List<Element> rects = elements(svg, "rect");
+        assertEquals(2, rects.size());
+        assertEquals("#a5c564", rects.get(1).getAttribute("fill"));
+        assertEquals(".2", rects.get(1).getAttribute("fill-opacity"));
+    }
+
+    /**
+     * Version 1 matrix with the three Finders, a run of 5 Dark modules on row 10 and a single one at (8,14).
+     */
+    private static ModuleMatrix matrix()
+    {
+        byte[][] data = new byte[WIDTH][WIDTH];
+        paintFinder(data, 0, 0);
+        paintFinder(data, WIDTH - 7, 0);
+        paintFinder(data, 0, WIDTH - 7);
+        for (int x = 8; x <= 12; x++) {
+            data[x][10] = 1;
+        }
+        data[8][14] = 1;
+        return ModuleMatrix.from(data);
+    }
+
+    private static void paintFinder(byte[][] data, int left, int top)
+    {
+        for (int x = 0; x < 7; x++) {
+            for (int y = 0; y < 7; y++) {
+                boolean frame = x == 0 || x == 6 || y == 0 || y == 6;
+                boolean ball = x >= 2 && x <= 4 && y >= 2 && y <= 4;
+                data[left + x][top + y] = (byte) (frame || ball ? 1 : 0);
+            }
+        }
+    }
+
+    private static StyleConfig style(int dataShape, int colorMode)
+    {
+        StyleConfig style = StyleConfig.getDefaultStyleConfig();
+        style.dataBlockShape = dataShape;
+        style.dataColorMode = colorMode;
+        style.dataColorPrimary = Color.BLACK;
+        style.dataColorSecondary = Color.GREEN;
+        style.finderColor = Color.RED;
+        style.finderBallColor = Color.BLUE;
+        style.bDrawLogoBackground = false;
+        return style;
+    }
+
+    private static Document parse(String svg) throws Exception
+    {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        return factory.newDocumentBuilder().parse(new InputSource(new StringReader(svg)));
+    }
+
+    private static List<Element> elements(Document svg, String name)
+    {
+        NodeList nodes = svg.getElementsByTagNameNS(SVG_NS, name);
+        List<Element> elements = new ArrayList<>();
+        for (int i = 0; i < nodes.getLength(); i++) {
+            elements.add((Element) nodes.item(i));
+        }
+        return elements;
+    }
+
+    private static int count(String s, char c)
+    {
+        int count = 0;
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) == c) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
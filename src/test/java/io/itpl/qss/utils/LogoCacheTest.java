@@ -0,0 +1,226 @@
+package io.itpl.qss.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unit test for the LogoCache: LRU eviction by bytes, revalidation of file: and http: logos after the TTL, and
+ * the single fetch shared by concurrent requests.
+ */
+public class LogoCacheTest
+{
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+
+    @After
+    public void stopServer()
+    {
+        if (server != null) {
+            server.stop(0);
+            serverExecutor.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldEvictTheLeastRecentlyUsedLogo() throws Exception
+    {
+        byte[] red = png(Color.RED);
+        byte[] green = png(Color.GREEN);
+        byte[] blue = png(Color.BLUE);
+        File a = write("a.png", red);
+        File b = write("b.png", green);
+        File c = write("c.png", blue);
+        // Room for two of the logos only.
+        LogoCache cache = new LogoCache(red.length + green.length + blue.length - 1, HOUR);
+
+        byte[] cachedA = cache.getEncodedImage(url(a));
+        cache.getEncodedImage(url(b));
+        assertEquals(red.length + green.length, cache.getSize());
+        assertSame(cachedA, cache.getEncodedImage(url(a)));
+        cache.getEncodedImage(url(c));
+        assertEquals(red.length + blue.length, cache.getSize());
+
+        // b was evicted and is fetched again, a is still served from the cache.
+        write("a.png", blue);
+        write("b.png", red);
+        assertArrayEquals(red, cache.getEncodedImage(url(a)));
+        assertArrayEquals(red, cache.getEncodedImage(url(b)));
+    }
+
+    @Test
+    public void shouldCountTheFittedVariants() throws Exception
+    {
+        byte[] red = png(Color.RED);
+        LogoCache cache = new LogoCache(64L * 1024 * 1024, HOUR);
+        String url = url(write("logo.png", red));
+        BufferedImage fitted = cache.getFittedImage(url, 400);
+        assertSame(fitted, cache.getFittedImage(url, 400));
+        assertEquals(red.length + LogoCache.sizeOf(fitted), cache.getSize());
+
+        cache.clear();
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void shouldRevalidateFileLogosAfterTheTTL() throws Exception
+    {
+        File file = write("logo.png", png(Color.RED));
+        file.setLastModified(1000000000000L);
+        LogoCache fresh = new LogoCache(64L * 1024 * 1024, HOUR);
+        LogoCache stale = new LogoCache(64L * 1024 * 1024, 0);
+        byte[] freshRed = fresh.getEncodedImage(url(file));
+        byte[] staleRed = stale.getEncodedImage(url(file));
+        // Unchanged file: the entry is kept.
+        assertSame(staleRed, stale.getEncodedImage(url(file)));
+
+        byte[] blue = png(Color.BLUE);
+        write("logo.png", blue);
+        file.setLastModified(1000000010000L);
+        assertSame(freshRed, fresh.getEncodedImage(url(file)));
+        assertArrayEquals(blue, stale.getEncodedImage(url(file)));
+    }
+
+    @Test
+    public void shouldRevalidateHttpLogosWithConditionalRequests() throws Exception
+    {
+        AtomicInteger requests = new AtomicInteger();
+        AtomicInteger notModified = new AtomicInteger();
+        byte[][] content = {png(Color.RED)};
+        String[] etag = {"\"v1\""};
+        String url = serve(exchange -> {
+            requests.incrementAndGet();
+            exchange.getResponseHeaders().set("ETag", etag[0]);
+            if (etag[0].equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                notModified.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                exchange.sendResponseHeaders(200, content[0].length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(content[0]);
+                }
+            }
+            exchange.close();
+        });
+        LogoCache cache = new LogoCache(64L * 1024 * 1024, 0);
+
+        byte[] red = cache.getEncodedImage(url);
+        assertArrayEquals(content[0], red);
+        assertSame(red, cache.getEncodedImage(url));
+        assertEquals(2, requests.get());
+        assertEquals(1, notModified.get());
+
+        content[0] = png(Color.BLUE);
+        etag[0] = "\"v2\"";
+        assertArrayEquals(content[0], cache.getEncodedImage(url));
+        assertEquals(3, requests.get());
+        assertEquals(1, notModified.get());
+    }
+
+    @Test
+    public void shouldFetchOnceForConcurrentRequests() throws Exception
+    {
+        AtomicInteger requests = new AtomicInteger();
+        byte[] red = png(Color.RED);
+        String url = serve(exchange -> {
+            requests.incrementAndGet();
+            try {
+                // Long enough for every thread to ask for the logo meanwhile.
+                Thread.sleep(500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(200, red.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(red);
+            }
+            exchange.close();
+        });
+        LogoCache cache = new LogoCache(64L * 1024 * 1024, HOUR);
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<byte[]>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return cache.getEncodedImage(url);
+                }));
+            }
+            start.countDown();
+            byte[] first = results.get(0).get();
+            for (Future<byte[]> result : results) {
+                assertSame(first, result.get());
+            }
+            assertEquals(1, requests.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private String serve(HttpHandler handler) throws Exception
+    {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/logo.png", handler);
+        // Serve the requests concurrently, as a real server does.
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.start();
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/logo.png";
+    }
+
+    private File write(String name, byte[] content) throws Exception
+    {
+        File file = new File(folder.getRoot(), name);
+        Files.write(file.toPath(), content);
+        return file;
+    }
+
+    private static String url(File file)
+    {
+        return file.toURI().toString();
+    }
+
+    private static byte[] png(Color color) throws Exception
+    {
+        BufferedImage image = new BufferedImage(60, 60, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(color);
+        g.fillRect(0, 0, 60, 60);
+        g.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+}
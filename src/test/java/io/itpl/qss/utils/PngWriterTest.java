@@ -0,0 +1,112 @@
+package io.itpl.qss.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Unit test for the PngWriter, the written images are read back with ImageIO.
+ */
+public class PngWriterTest
+{
+    @Test
+    public void shouldRoundTripEveryBitDepth() throws IOException
+    {
+        // 2, 4, 16 and 256 colors give 1, 2, 4 and 8 bits per pixel, 300 colors falls back to RGB.
+        for (int colors : new int[]{2, 3, 4, 16, 256, 300}) {
+            BufferedImage image = randomImage(colors, BufferedImage.TYPE_INT_RGB);
+            assertPixelsEqual(image, read(write(image)));
+        }
+    }
+
+    @Test
+    public void shouldKeepAlpha() throws IOException
+    {
+        for (int colors : new int[]{4, 300}) {
+            BufferedImage image = randomImage(colors, BufferedImage.TYPE_INT_ARGB);
+            assertPixelsEqual(image, read(write(image)));
+        }
+    }
+
+    @Test
+    public void shouldRoundTripPackedCanvas() throws IOException
+    {
+        // 1 and 4 bit canvases, the 4 bit color map repeats the background color.
+        for (int colors : new int[]{2, 3, 5}) {
+            Random random = new Random(colors);
+            Color[] palette = new Color[colors];
+            for (int i = 0; i < colors; i++) {
+                palette[i] = new Color(i * 60, random.nextInt(256), 255 - i * 40);
+            }
+            BufferedImage canvas = QRUtils.createCanvas(37, 40, palette);
+            assertEquals(BufferedImage.TYPE_BYTE_BINARY, canvas.getType());
+            int mapSize = ((IndexColorModel) canvas.getColorModel()).getMapSize();
+            for (int y = 0; y < canvas.getHeight(); y++) {
+                for (int x = 0; x < canvas.getWidth(); x++) {
+                    // Any index of the color map, including the repeated entries.
+                    canvas.getRaster().setSample(x, y, 0, y % 2 == 1
+                            ? canvas.getRaster().getSample(x, y - 1, 0) : random.nextInt(mapSize));
+                }
+            }
+            assertPixelsEqual(canvas, read(write(canvas)));
+        }
+    }
+
+    @Test
+    public void shouldWriteSameBytes() throws IOException
+    {
+        BufferedImage image = randomImage(4, BufferedImage.TYPE_INT_RGB);
+        assertArrayEquals(write(image), write(image));
+    }
+
+    private static BufferedImage randomImage(int colors, int type)
+    {
+        Random random = new Random(colors);
+        int[] palette = new int[colors];
+        for (int i = 0; i < colors; i++) {
+            int alpha = type == BufferedImage.TYPE_INT_ARGB ? random.nextInt(256) : 0xFF;
+            palette[i] = alpha << 24 | i << 8 | random.nextInt(256);
+        }
+        // Odd width exercises the partial last byte of the packed rows, repeated rows the Up filter.
+        BufferedImage image = new BufferedImage(37, 40, type);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, y % 2 == 1 ? image.getRGB(x, y - 1) : palette[random.nextInt(colors)]);
+            }
+        }
+        return image;
+    }
+
+    private static byte[] write(BufferedImage image) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new PngWriter().write(image, out);
+        return out.toByteArray();
+    }
+
+    private static BufferedImage read(byte[] png) throws IOException
+    {
+        return ImageIO.read(new ByteArrayInputStream(png));
+    }
+
+    private static void assertPixelsEqual(BufferedImage expected, BufferedImage actual)
+    {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals("pixel " + x + "," + y, expected.getRGB(x, y), actual.getRGB(x, y));
+            }
+        }
+    }
+}